@@ -7,11 +7,13 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.Set;
 
 @Configuration
 @EnableCaching
@@ -31,7 +33,11 @@ public class CacheConfig {
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new ProtobufRedisSerializer()))
                 .disableCachingNullValues();
 
-        return RedisCacheManager.builder(connectionFactory)
+        // Heroes carry an entity tag next to them for conditional REST requests
+        RedisCacheWriter cacheWriter = new ETagRedisCacheWriter(
+                RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory), connectionFactory, Set.of(SUPERHERO_CACHE));
+
+        return RedisCacheManager.builder(cacheWriter)
                 .cacheDefaults(config)
                 .withCacheConfiguration(SUPERHERO_CACHE, config)
                 .withCacheConfiguration(HERO_SEARCH_CACHE, config)
@@ -0,0 +1,113 @@
+package com.example.superheroproxy.config;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.superheroproxy.service.TokenBucket;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Limits the rate of gRPC calls per client, for every service.
+ *
+ * Each client gets its own token bucket, so a noisy client runs out of tokens without taking any from
+ * the others. Clients are told apart by their IP address; headers such as an API key are not checked by
+ * this service, so a client could change them at will to get a fresh bucket and push others out of the map.
+ * Buckets live in a bounded map and are dropped once a client has been idle; by then they would be full
+ * again anyway. Every call costs one token, streaming calls included, and every call that is let through
+ * ends with trailers telling the client its quota and how much of it is left. Calls over the limit are
+ * closed with {@code RESOURCE_EXHAUSTED} and a hint of when to try again.
+ */
+public class ClientRateLimitInterceptor implements ServerInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientRateLimitInterceptor.class);
+
+    public static final Metadata.Key<String> LIMIT =
+        Metadata.Key.of("x-ratelimit-limit", Metadata.ASCII_STRING_MARSHALLER);
+    public static final Metadata.Key<String> REMAINING =
+        Metadata.Key.of("x-ratelimit-remaining", Metadata.ASCII_STRING_MARSHALLER);
+    public static final Metadata.Key<String> RETRY_AFTER_MILLIS =
+        Metadata.Key.of("x-ratelimit-retry-after-ms", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final Cache<String, TokenBucket> buckets;
+
+    /**
+     * @param permitsPerSecond Calls per second each client may make on average
+     * @param burst Most calls a client may make at once after being idle
+     * @param maxClients Most clients whose buckets are kept
+     * @param idleExpiry Time after which the bucket of an idle client is dropped
+     */
+    public ClientRateLimitInterceptor(double permitsPerSecond, int burst, int maxClients, Duration idleExpiry) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.buckets = Caffeine.newBuilder()
+            .maximumSize(maxClients)
+            .expireAfterAccess(idleExpiry)
+            .build();
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String client = clientOf(call);
+        TokenBucket bucket = buckets.get(client, key -> new TokenBucket(permitsPerSecond, burst));
+
+        if (!bucket.tryAcquire()) {
+            logger.warn("Rate limit exceeded for client: {}", client);
+            Metadata trailers = quota(0);
+            trailers.put(RETRY_AFTER_MILLIS, String.valueOf(Math.max(1, bucket.timeUntilAvailable(TimeUnit.MILLISECONDS))));
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription("Rate limit exceeded. Please try again later."), trailers);
+            return new ServerCall.Listener<>() { };
+        }
+
+        return next.startCall(new SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                trailers.merge(quota(bucket.available()));
+                super.close(status, trailers);
+            }
+        }, headers);
+    }
+
+    /**
+     * @return The number of clients with a bucket
+     */
+    public long trackedClients() {
+        buckets.cleanUp();
+        return buckets.estimatedSize();
+    }
+
+    private Metadata quota(int remaining) {
+        Metadata trailers = new Metadata();
+        trailers.put(LIMIT, String.valueOf(burst));
+        trailers.put(REMAINING, String.valueOf(remaining));
+        return trailers;
+    }
+
+    /**
+     * Identifies the client of a call by its IP address without the port, so that all connections of a
+     * client share one bucket.
+     */
+    private static String clientOf(ServerCall<?, ?> call) {
+        SocketAddress address = call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+        if (address instanceof InetSocketAddress inet) {
+            return inet.getAddress() != null ? inet.getAddress().getHostAddress() : inet.getHostString();
+        }
+        return String.valueOf(address);
+    }
+}
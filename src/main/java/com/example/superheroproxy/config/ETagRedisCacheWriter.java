@@ -0,0 +1,159 @@
+package com.example.superheroproxy.config;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import com.example.superheroproxy.utils.ContentHash;
+
+/**
+ * Redis cache writer that keeps an entity tag next to every entry of the tracked caches.
+ *
+ * The tag is a hash of the stored bytes, written under {@code etag:<entry key>} with the entry's TTL,
+ * so HTTP validators can be answered with a few bytes from Redis instead of reading and decoding the
+ * entry. The tag is removed before an entry changes and written again after it is stored: a reader
+ * that looks up the tag before the entry never labels an older entry with a newer tag, and a failed
+ * tag write leaves the entry without a tag rather than with a stale one.
+ */
+public class ETagRedisCacheWriter implements RedisCacheWriter {
+    private static final Logger logger = LoggerFactory.getLogger(ETagRedisCacheWriter.class);
+
+    private static final byte[] ETAG_KEY_PREFIX = "etag:".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisCacheWriter delegate;
+    private final RedisConnectionFactory connectionFactory;
+    private final Set<String> trackedCaches;
+
+    /**
+     * @param delegate The writer storing the entries
+     * @param connectionFactory Connections for reading and writing tags
+     * @param trackedCaches Names of the caches whose entries get tags
+     */
+    public ETagRedisCacheWriter(RedisCacheWriter delegate, RedisConnectionFactory connectionFactory, Set<String> trackedCaches) {
+        this.delegate = delegate;
+        this.connectionFactory = connectionFactory;
+        this.trackedCaches = Set.copyOf(trackedCaches);
+    }
+
+    /**
+     * Returns the Redis key holding the tag of a cache entry.
+     *
+     * @param cacheKey The full Redis key of the entry, including the cache prefix
+     * @return The key of its tag
+     */
+    public static byte[] eTagKey(byte[] cacheKey) {
+        byte[] key = new byte[ETAG_KEY_PREFIX.length + cacheKey.length];
+        System.arraycopy(ETAG_KEY_PREFIX, 0, key, 0, ETAG_KEY_PREFIX.length);
+        System.arraycopy(cacheKey, 0, key, ETAG_KEY_PREFIX.length, cacheKey.length);
+        return key;
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return delegate.get(name, key);
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key, Duration ttl) {
+        return delegate.get(name, key, ttl);
+    }
+
+    @Override
+    public boolean supportsAsyncRetrieve() {
+        return delegate.supportsAsyncRetrieve();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> retrieve(String name, byte[] key, Duration ttl) {
+        return delegate.retrieve(name, key, ttl);
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, Duration ttl) {
+        if (!trackedCaches.contains(name)) {
+            delegate.put(name, key, value, ttl);
+            return;
+        }
+        deleteETag(key);
+        delegate.put(name, key, value, ttl);
+        writeETag(key, value, ttl);
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String name, byte[] key, byte[] value, Duration ttl) {
+        if (!trackedCaches.contains(name)) {
+            return delegate.store(name, key, value, ttl);
+        }
+        deleteETag(key);
+        return delegate.store(name, key, value, ttl).thenRun(() -> writeETag(key, value, ttl));
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+        byte[] existing = delegate.putIfAbsent(name, key, value, ttl);
+        if (existing == null && trackedCaches.contains(name)) {
+            writeETag(key, value, ttl);
+        }
+        return existing;
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        if (trackedCaches.contains(name)) {
+            deleteETag(key);
+        }
+        delegate.remove(name, key);
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        if (trackedCaches.contains(name)) {
+            delegate.clean(name, eTagKey(pattern));
+        }
+        delegate.clean(name, pattern);
+    }
+
+    @Override
+    public void clearStatistics(String name) {
+        delegate.clearStatistics(name);
+    }
+
+    @Override
+    public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+        return new ETagRedisCacheWriter(delegate.withStatisticsCollector(cacheStatisticsCollector), connectionFactory, trackedCaches);
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics(String cacheName) {
+        return delegate.getCacheStatistics(cacheName);
+    }
+
+    private void writeETag(byte[] key, byte[] value, Duration ttl) {
+        byte[] eTag = ContentHash.of(value).getBytes(StandardCharsets.UTF_8);
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            if (ttl != null && !ttl.isZero() && !ttl.isNegative()) {
+                connection.stringCommands().pSetEx(eTagKey(key), ttl.toMillis(), eTag);
+            } else {
+                connection.stringCommands().set(eTagKey(key), eTag);
+            }
+        } catch (RuntimeException e) {
+            // The entry is left without a tag, which only costs clients a full response
+            logger.warn("Could not write entity tag for {}", new String(key, StandardCharsets.UTF_8), e);
+        }
+    }
+
+    private void deleteETag(byte[] key) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.keyCommands().del(eTagKey(key));
+        }
+    }
+}
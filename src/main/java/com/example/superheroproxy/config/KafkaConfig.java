@@ -15,6 +15,8 @@ import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import com.google.protobuf.Message;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,6 +29,9 @@ public class KafkaConfig {
     @Value("${kafka.consumer.group-id}")
     private String defaultConsumerGroupId;
 
+    @Value("${kafka.consumer.fanout-group-prefix}")
+    private String fanoutGroupPrefix;
+
     @Bean
     public ProducerFactory<String, Message> producerFactory() {
         Map<String, Object> configProps = new HashMap<>();
@@ -41,6 +46,27 @@ public class KafkaConfig {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    /**
+     * Names the fan-out consumer group of this node after the node: {@code NODE_ID} if set, otherwise
+     * the host name, which is the pod name on Kubernetes. Every node gets its own group, and a restarted
+     * node rejoins the group it had instead of leaving one more behind on the broker.
+     */
+    @Bean
+    public String fanoutGroupId() {
+        String nodeId = System.getenv("NODE_ID");
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = System.getenv("HOSTNAME");
+        }
+        if (nodeId == null || nodeId.isBlank()) {
+            try {
+                nodeId = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException("Cannot name the fan-out consumer group; set NODE_ID", e);
+            }
+        }
+        return fanoutGroupPrefix + "-" + nodeId;
+    }
+
     @Bean
     public ConsumerFactory<String, Message> consumerFactory() {
         return createConsumerFactory(defaultConsumerGroupId);
@@ -10,11 +10,29 @@ public class NotificationConfig {
     private int maxTotalSubscribers = 10000;
     private int cleanupIntervalMinutes = 5;
     private int subscriberTimeoutMinutes = 30;
-    private int notificationThreadPoolSize = 20;
-    private int notificationQueueSize = 200;
-    private int fallbackThreadPoolSize = 10;
-    private int fallbackQueueSize = 100;
     private int rateLimitPerMinute = 1000;
+    private int dispatcherShards = 4;
+    private int dispatcherQueueCapacity = 10000;
+    private int replayBufferSlots = 4096;
+    private int replayBufferSlotBytes = 4096;
+    private boolean kafkaFanout = false;
+    private int timerTickMillis = 10;
+    private int timerWheelSize = 512;
+    private int batchMaxDelayMillis = 50;
+    private int batchMaxUpdates = 64;
+    private int sseHeartbeatSeconds = 60;
+    private int sseQueueCapacity = 256;
+    private int sseMaxLagSeconds = 30;
+    private SseOverflowPolicy sseOverflowPolicy = SseOverflowPolicy.DROP_OLDEST;
+    private int sseWriterThreads = 4;
+
+    /** What happens when an SSE client's write queue is full */
+    public enum SseOverflowPolicy {
+        /** Drop the oldest queued update and keep the client */
+        DROP_OLDEST,
+        /** Disconnect the client */
+        DISCONNECT
+    }
 
     public int getMaxSubscribersPerHero() {
         return maxSubscribersPerHero;
@@ -48,43 +66,123 @@ public class NotificationConfig {
         this.subscriberTimeoutMinutes = subscriberTimeoutMinutes;
     }
 
-    public int getNotificationThreadPoolSize() {
-        return notificationThreadPoolSize;
+    public int getRateLimitPerMinute() {
+        return rateLimitPerMinute;
     }
 
-    public void setNotificationThreadPoolSize(int notificationThreadPoolSize) {
-        this.notificationThreadPoolSize = notificationThreadPoolSize;
+    public void setRateLimitPerMinute(int rateLimitPerMinute) {
+        this.rateLimitPerMinute = rateLimitPerMinute;
     }
 
-    public int getNotificationQueueSize() {
-        return notificationQueueSize;
+    public int getDispatcherShards() {
+        return dispatcherShards;
     }
 
-    public void setNotificationQueueSize(int notificationQueueSize) {
-        this.notificationQueueSize = notificationQueueSize;
+    public void setDispatcherShards(int dispatcherShards) {
+        this.dispatcherShards = dispatcherShards;
     }
 
-    public int getFallbackThreadPoolSize() {
-        return fallbackThreadPoolSize;
+    public int getDispatcherQueueCapacity() {
+        return dispatcherQueueCapacity;
     }
 
-    public void setFallbackThreadPoolSize(int fallbackThreadPoolSize) {
-        this.fallbackThreadPoolSize = fallbackThreadPoolSize;
+    public void setDispatcherQueueCapacity(int dispatcherQueueCapacity) {
+        this.dispatcherQueueCapacity = dispatcherQueueCapacity;
     }
 
-    public int getFallbackQueueSize() {
-        return fallbackQueueSize;
+    public int getReplayBufferSlots() {
+        return replayBufferSlots;
     }
 
-    public void setFallbackQueueSize(int fallbackQueueSize) {
-        this.fallbackQueueSize = fallbackQueueSize;
+    public void setReplayBufferSlots(int replayBufferSlots) {
+        this.replayBufferSlots = replayBufferSlots;
     }
 
-    public int getRateLimitPerMinute() {
-        return rateLimitPerMinute;
+    public int getReplayBufferSlotBytes() {
+        return replayBufferSlotBytes;
     }
 
-    public void setRateLimitPerMinute(int rateLimitPerMinute) {
-        this.rateLimitPerMinute = rateLimitPerMinute;
+    public void setReplayBufferSlotBytes(int replayBufferSlotBytes) {
+        this.replayBufferSlotBytes = replayBufferSlotBytes;
+    }
+
+    public boolean isKafkaFanout() {
+        return kafkaFanout;
+    }
+
+    public void setKafkaFanout(boolean kafkaFanout) {
+        this.kafkaFanout = kafkaFanout;
+    }
+
+    public int getTimerTickMillis() {
+        return timerTickMillis;
+    }
+
+    public void setTimerTickMillis(int timerTickMillis) {
+        this.timerTickMillis = timerTickMillis;
+    }
+
+    public int getTimerWheelSize() {
+        return timerWheelSize;
+    }
+
+    public void setTimerWheelSize(int timerWheelSize) {
+        this.timerWheelSize = timerWheelSize;
+    }
+
+    public int getBatchMaxDelayMillis() {
+        return batchMaxDelayMillis;
+    }
+
+    public void setBatchMaxDelayMillis(int batchMaxDelayMillis) {
+        this.batchMaxDelayMillis = batchMaxDelayMillis;
+    }
+
+    public int getBatchMaxUpdates() {
+        return batchMaxUpdates;
+    }
+
+    public void setBatchMaxUpdates(int batchMaxUpdates) {
+        this.batchMaxUpdates = batchMaxUpdates;
+    }
+
+    public int getSseHeartbeatSeconds() {
+        return sseHeartbeatSeconds;
+    }
+
+    public void setSseHeartbeatSeconds(int sseHeartbeatSeconds) {
+        this.sseHeartbeatSeconds = sseHeartbeatSeconds;
+    }
+
+    public int getSseQueueCapacity() {
+        return sseQueueCapacity;
+    }
+
+    public void setSseQueueCapacity(int sseQueueCapacity) {
+        this.sseQueueCapacity = sseQueueCapacity;
+    }
+
+    public int getSseMaxLagSeconds() {
+        return sseMaxLagSeconds;
+    }
+
+    public void setSseMaxLagSeconds(int sseMaxLagSeconds) {
+        this.sseMaxLagSeconds = sseMaxLagSeconds;
+    }
+
+    public SseOverflowPolicy getSseOverflowPolicy() {
+        return sseOverflowPolicy;
+    }
+
+    public void setSseOverflowPolicy(SseOverflowPolicy sseOverflowPolicy) {
+        this.sseOverflowPolicy = sseOverflowPolicy;
+    }
+
+    public int getSseWriterThreads() {
+        return sseWriterThreads;
+    }
+
+    public void setSseWriterThreads(int sseWriterThreads) {
+        this.sseWriterThreads = sseWriterThreads;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.example.superheroproxy.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.protobuf.Message;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.protobuf.ProtoUtils;
+
+/**
+ * gRPC marshaller that lets a message be encoded once and written to many streams.
+ *
+ * Broadcast code calls {@link #preSerialize(Message)} before fanning a message out;
+ * every subscriber stream that later marshals the same instance gets a stream over
+ * the shared encoded bytes instead of running the protobuf encoder again.
+ * The encoded bytes are keyed by identity with weak keys, so they live exactly as long
+ * as the message instance is still referenced by some pending write.
+ * Messages that were never pre-serialized fall back to the regular protobuf marshaller.
+ *
+ * @param <T> The protobuf message type handled by this marshaller
+ */
+public class PreSerializedMarshaller<T extends Message> implements MethodDescriptor.Marshaller<T> {
+
+    private final T prototype;
+    private final MethodDescriptor.Marshaller<T> delegate;
+    /** Encoded bytes per message instance; weak keys compare by identity */
+    private final Cache<T, byte[]> encoded = Caffeine.newBuilder().weakKeys().build();
+
+    public PreSerializedMarshaller(T prototype) {
+        this.prototype = prototype;
+        this.delegate = ProtoUtils.marshaller(prototype);
+    }
+
+    /**
+     * Encodes the message once and remembers the bytes for every subsequent {@link #stream} call.
+     *
+     * @param message The message about to be broadcast
+     * @return The encoded bytes shared by all streams writing this instance
+     */
+    public byte[] preSerialize(T message) {
+        return encoded.get(message, Message::toByteArray);
+    }
+
+    /**
+     * Records bytes already produced for a message, for example assembled from the encodings of its
+     * parts, so streams write them as they are.
+     *
+     * @param message The message
+     * @param bytes The exact encoding of the message
+     */
+    public void registerEncoded(T message, byte[] bytes) {
+        encoded.put(message, bytes);
+    }
+
+    /**
+     * Parses a message from bytes that are already encoded and keeps those bytes for writing it,
+     * so re-sending a stored message does not encode it again.
+     *
+     * @param bytes The encoded message
+     * @return The parsed message, linked to the given bytes
+     */
+    public T parseEncoded(byte[] bytes) {
+        T message = delegate.parse(new ByteArrayInputStream(bytes));
+        encoded.put(message, bytes);
+        return message;
+    }
+
+    @Override
+    public InputStream stream(T value) {
+        byte[] bytes = encoded.getIfPresent(value);
+        if (bytes == null) {
+            return delegate.stream(value);
+        }
+        return new SharedBytesInputStream(bytes);
+    }
+
+    @Override
+    public T parse(InputStream stream) {
+        return delegate.parse(stream);
+    }
+
+    /**
+     * Rebuilds a service definition so that every method whose responses are of this
+     * marshaller's message type writes them through this marshaller.
+     *
+     * @param service The generated service definition
+     * @return An equivalent definition using the shared-bytes marshaller for responses
+     */
+    public ServerServiceDefinition rebind(ServerServiceDefinition service) {
+        ServiceDescriptor.Builder descriptor = ServiceDescriptor.newBuilder(service.getServiceDescriptor().getName())
+                .setSchemaDescriptor(service.getServiceDescriptor().getSchemaDescriptor());
+        List<ServerMethodDefinition<?, ?>> methods = new ArrayList<>();
+        for (ServerMethodDefinition<?, ?> method : service.getMethods()) {
+            ServerMethodDefinition<?, ?> rebound = rebindMethod(method);
+            descriptor.addMethod(rebound.getMethodDescriptor());
+            methods.add(rebound);
+        }
+
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptor.build());
+        methods.forEach(builder::addMethod);
+        return builder.build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <ReqT, RespT> ServerMethodDefinition<?, ?> rebindMethod(ServerMethodDefinition<ReqT, RespT> method) {
+        MethodDescriptor<ReqT, RespT> descriptor = method.getMethodDescriptor();
+        if (!(descriptor.getResponseMarshaller() instanceof MethodDescriptor.PrototypeMarshaller<?> marshaller)
+                || marshaller.getMessagePrototype().getClass() != prototype.getClass()) {
+            return method;
+        }
+        MethodDescriptor<ReqT, T> rebound = descriptor.toBuilder(descriptor.getRequestMarshaller(), this).build();
+        return ServerMethodDefinition.create(rebound, (ServerCallHandler<ReqT, T>) method.getServerCallHandler());
+    }
+
+    /**
+     * Input stream over shared encoded bytes. Implements {@link KnownLength} and {@link Drainable}
+     * so gRPC sizes the frame up front and copies the bytes straight into its write buffer.
+     */
+    private static final class SharedBytesInputStream extends ByteArrayInputStream implements KnownLength, Drainable {
+
+        SharedBytesInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            int length = count - pos;
+            target.write(buf, pos, length);
+            pos = count;
+            return length;
+        }
+    }
+}
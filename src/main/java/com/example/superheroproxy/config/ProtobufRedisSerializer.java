@@ -55,4 +55,25 @@ public class ProtobufRedisSerializer implements RedisSerializer<Object> {
             throw new SerializationException("Could not deserialize value", e);
         }
     }
+
+    /**
+     * Returns the protobuf encoding of a stored message without parsing it, so it can be
+     * handed to clients that read protobuf as-is.
+     *
+     * @param bytes The stored value
+     * @return The message bytes, or null if the value is empty or not a protobuf message
+     */
+    public byte[] deserializeMessageBytes(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            Object obj = ois.readObject();
+            return obj instanceof CacheValueWrapper wrapper ? wrapper.getData() : null;
+        } catch (Exception e) {
+            throw new SerializationException("Could not deserialize value", e);
+        }
+    }
 } 
\ No newline at end of file
@@ -1,6 +1,9 @@
 package com.example.superheroproxy.config;
 
+import java.time.Duration;
+
 import com.google.common.util.concurrent.RateLimiter;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -8,11 +11,29 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class RateLimiterConfig {
 
-    @Value("${rate.limit.permits-per-second:10}")
+    @Value("${rate.limit.permits-per-second:100}")
     private double permitsPerSecond;
 
+    @Value("${rate.limit.client.permits-per-second:10}")
+    private double clientPermitsPerSecond;
+
+    @Value("${rate.limit.client.burst:20}")
+    private int clientBurst;
+
+    @Value("${rate.limit.client.max-clients:100000}")
+    private int maxClients;
+
+    @Value("${rate.limit.client.idle-expiry-minutes:10}")
+    private long clientIdleExpiryMinutes;
+
     @Bean
     public RateLimiter rateLimiter() {
         return RateLimiter.create(permitsPerSecond);
     }
-} 
\ No newline at end of file
+
+    @GrpcGlobalServerInterceptor
+    public ClientRateLimitInterceptor clientRateLimitInterceptor() {
+        return new ClientRateLimitInterceptor(clientPermitsPerSecond, clientBurst, maxClients,
+                Duration.ofMinutes(clientIdleExpiryMinutes));
+    }
+}
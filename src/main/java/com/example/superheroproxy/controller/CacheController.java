@@ -3,16 +3,20 @@ package com.example.superheroproxy.controller;
 import com.example.superheroproxy.config.CacheConfig;
 import com.example.superheroproxy.dto.HeroDto;
 import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.service.HeroCacheReader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.data.redis.cache.RedisCache;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -23,16 +27,20 @@ public class CacheController {
 
     private final CacheManager cacheManager;
     private final RedisConnectionFactory redisConnectionFactory;
+    private final HeroCacheReader heroCacheReader;
 
     /**
      * Constructor for HeroController.
      *
      * @param cacheManager The cache manager for handling superhero cache operations
+     * @param heroCacheReader Reads cached heroes as protobuf bytes for protobuf clients
      */
     @Autowired
-    public CacheController(CacheManager cacheManager, RedisConnectionFactory redisConnectionFactory) {
+    public CacheController(CacheManager cacheManager, RedisConnectionFactory redisConnectionFactory,
+                           HeroCacheReader heroCacheReader) {
         this.cacheManager = cacheManager;
         this.redisConnectionFactory = redisConnectionFactory;
+        this.heroCacheReader = heroCacheReader;
     }
 
 
@@ -59,12 +67,42 @@ public class CacheController {
 
     /**
      * Retrieves a specific hero from the cache by ID.
+     * Clients accepting {@code application/x-protobuf} receive the full {@code Hero} message,
+     * copied from the cached bytes without decoding it.
+     * Responses carry the ETag kept next to the cached hero; a matching {@code If-None-Match} gets 304
+     * without the hero being read.
      *
      * @param heroId The ID of the hero to retrieve
-     * @return ResponseEntity containing the hero data or 404 if not found
+     * @param accept The Accept header, used to choose between JSON and protobuf
+     * @param ifNoneMatch The entity tags the client holds, if any
+     * @return ResponseEntity containing the hero data, 304 if the client holds the current hero, or 404 if not found
      */
     @GetMapping("/{heroId}")
-    public ResponseEntity<HeroDto> getHeroFromCache(@PathVariable String heroId) {
+    public ResponseEntity<?> getHeroFromCache(@PathVariable String heroId,
+                                              @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        boolean protobuf = ProtobufNegotiation.prefersProtobuf(accept);
+        // The tag is read before the hero, so a hero may carry an older tag but is never labelled with a newer tag
+        String hash = heroCacheReader.getHeroETags(List.of(heroId)).get(heroId);
+        String eTag = hash == null ? null : EntityTags.tag(hash, protobuf);
+        if (EntityTags.matches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .eTag(eTag)
+                    .build();
+        }
+
+        if (protobuf) {
+            byte[] hero = heroCacheReader.getHeroBytes(heroId);
+            if (hero == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return withETag(ResponseEntity.ok(), eTag)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .contentType(ProtobufNegotiation.PROTOBUF)
+                    .body(hero);
+        }
+
         Cache cache = cacheManager.getCache(CacheConfig.SUPERHERO_CACHE);
         if (cache == null) {
             return ResponseEntity.notFound().build();
@@ -76,7 +114,13 @@ public class CacheController {
         }
 
         Hero hero = (Hero) valueWrapper.get();
-        return ResponseEntity.ok(new HeroDto(hero.getId(), hero.getName()));
+        return withETag(ResponseEntity.ok(), eTag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(new HeroDto(hero.getId(), hero.getName()));
+    }
+
+    private ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder response, String eTag) {
+        return eTag == null ? response : response.eTag(eTag);
     }
 
     /**
@@ -0,0 +1,47 @@
+package com.example.superheroproxy.controller;
+
+/**
+ * Strong entity tags of REST responses and matching of {@code If-None-Match} headers.
+ *
+ * Tags are built from content hashes. Protobuf representations get their own suffix, so a JSON and a
+ * protobuf body of the same content never share a tag.
+ */
+final class EntityTags {
+
+    private EntityTags() {}
+
+    /**
+     * @param hash The content hash
+     * @param protobuf Whether the representation is protobuf
+     * @return The quoted entity tag
+     */
+    static String tag(String hash, boolean protobuf) {
+        return "\"" + hash + (protobuf ? "-pb" : "") + "\"";
+    }
+
+    /**
+     * Compares an {@code If-None-Match} header to the current tag, using the weak comparison the header calls for.
+     *
+     * @param ifNoneMatch The header value, or null
+     * @param tag The current quoted tag
+     * @return Whether the client already holds the current representation
+     */
+    static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null || tag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,20 +2,28 @@ package com.example.superheroproxy.controller;
 
 import com.example.superheroproxy.dto.PaginatedSearchResultDto;
 import com.example.superheroproxy.dto.SearchResultDto;
-import com.example.superheroproxy.proto.SearchRequest;
-import com.example.superheroproxy.proto.SearchResponse;
-import com.example.superheroproxy.service.SuperheroProxyService;
-import io.grpc.stub.StreamObserver;
+import com.example.superheroproxy.service.HeroBatch;
+import com.example.superheroproxy.service.HeroSearchException;
+import com.example.superheroproxy.service.HeroSearchPage;
+import com.example.superheroproxy.service.HeroSearchService;
+import com.example.superheroproxy.utils.HeroUpdateJsonEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -25,94 +33,158 @@ import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/api/hero")
 public class HeroController {
+    private static final Logger logger = LoggerFactory.getLogger(HeroController.class);
 
-    private final SuperheroProxyService superheroProxyService;
+    /** Longest time a search or batch fetch may take before the request fails with 504 */
+    private static final long REQUEST_TIMEOUT_SECONDS = 5;
+
+    private final HeroSearchService heroSearchService;
 
     /**
      * Constructor for HeroController.
      * 
-     * @param superheroProxyService The service for superhero-related operations
+     * @param heroSearchService The service that performs hero searches
      */
     @Autowired
-    public HeroController( SuperheroProxyService superheroProxyService) {
-        this.superheroProxyService = superheroProxyService;
+    public HeroController(HeroSearchService heroSearchService) {
+        this.heroSearchService = heroSearchService;
     }
 
 
     /**
-     * Searches for heroes by name using gRPC service.
+     * Searches for heroes by name without holding a request thread while the search runs.
+     * The search service is called directly, and the response is written when its future completes.
+     * Clients accepting {@code application/x-protobuf} receive the encoded {@code SearchResponse} instead of JSON.
+     * Pages carry an ETag once all their heroes are cached; a client sending it back in {@code If-None-Match}
+     * gets 304 while the page is unchanged, without any hero being fetched.
      *
      * @param name The name to search for
      * @param page The page number to retrieve
      * @param pageSize The number of heroes per page
-     * @return ResponseEntity containing a list of search results or 400 if the request fails
+     * @param accept The Accept header, used to choose between JSON and protobuf
+     * @param ifNoneMatch The entity tags the client holds, if any
+     * @return A future completed with the page of search results, 304 if the client holds the current page,
+     *         429 if the search rate limit is exceeded, 504 if the search takes longer than the timeout,
+     *         or 503 if it fails
      */
     @GetMapping("/search")
-    public ResponseEntity<PaginatedSearchResultDto> searchHero(
+    public CompletableFuture<ResponseEntity<?>> searchHero(
             @RequestParam String name,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "10") int pageSize) {
-        try {
-            // Create a latch to wait for the asynchronous response
-            CountDownLatch latch = new CountDownLatch(1);
-            SearchResponse[] responseHolder = new SearchResponse[1];
-            Exception[] errorHolder = new Exception[1];
-
-            SearchRequest request = SearchRequest.newBuilder()
-                    .setName(name)
-                    .setPageNumber(page)
-                    .setPageSize(pageSize)
-                    .build();
-
-            // Create a StreamObserver to handle the gRPC response
-            superheroProxyService.searchHero(request, new StreamObserver<SearchResponse>() {
-                @Override
-                public void onNext(SearchResponse response) {
-                    responseHolder[0] = response;
-                }
-
-                @Override
-                public void onError(Throwable t) {
-                    errorHolder[0] = new Exception(t);
-                    latch.countDown();
-                }
-
-                @Override
-                public void onCompleted() {
-                    latch.countDown();
-                }
-            });
-
-            // Wait for the response with a timeout
-            if (!latch.await(5, TimeUnit.SECONDS)) {
-                return ResponseEntity.badRequest().build();
-            }
+            @RequestParam(defaultValue = "10") int pageSize,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        boolean protobuf = ProtobufNegotiation.prefersProtobuf(accept);
+        return heroSearchService.searchTagged(name, page, pageSize,
+                        hash -> EntityTags.matches(ifNoneMatch, EntityTags.tag(hash, protobuf)))
+                .orTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .<ResponseEntity<?>>thenApply(result -> toResponse(result, protobuf))
+                .exceptionally(this::toErrorResponse);
+    }
 
-            if (errorHolder[0] != null) {
-                throw errorHolder[0];
-            }
+    /**
+     * Fetches heroes by ID with one bulk cache read, fetching only the heroes that are not cached.
+     * The JSON body is {@code {"heroes": [...], "missingIds": [...]}}; clients accepting
+     * {@code application/x-protobuf} receive the encoded {@code GetHeroesResponse}.
+     *
+     * @param ids The hero IDs, as repeated or comma-separated parameters
+     * @param accept The Accept header, used to choose between JSON and protobuf
+     * @return A future completed with the found heroes and the missing IDs, 400 if too many IDs are requested,
+     *         429 if the rate limit is exceeded, 504 if the fetch takes longer than the timeout, or 503 if it fails
+     */
+    @GetMapping("/batch")
+    public CompletableFuture<ResponseEntity<?>> getHeroes(
+            @RequestParam List<String> ids,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        boolean protobuf = ProtobufNegotiation.prefersProtobuf(accept);
+        return heroSearchService.getHeroes(ids)
+                .orTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .<ResponseEntity<?>>thenApply(batch -> toResponse(batch, protobuf))
+                .exceptionally(this::toErrorResponse);
+    }
 
-            SearchResponse response = responseHolder[0];
-            if (response == null) {
-                return ResponseEntity.badRequest().build();
-            }
+    /**
+     * Writes a batch of heroes in the negotiated representation.
+     *
+     * @param batch The batch of heroes
+     * @param protobuf Whether the client asked for protobuf
+     * @return The batch
+     */
+    private ResponseEntity<?> toResponse(HeroBatch batch, boolean protobuf) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT);
+        if (protobuf) {
+            return response.contentType(ProtobufNegotiation.PROTOBUF)
+                    .body(batch.toResponse().toByteArray());
+        }
+        return response.contentType(MediaType.APPLICATION_JSON)
+                .body(HeroUpdateJsonEncoder.encodeBatch(batch.getHeroes(), batch.getMissingIds()));
+    }
 
-            // Convert the response to DTOs
-            List<SearchResultDto> results = response.getResultsList().stream()
-                    .map(hero -> new SearchResultDto(hero.getId(), hero.getName()))
-                    .collect(Collectors.toList());
+    /**
+     * Writes a page of search results in the negotiated representation.
+     *
+     * @param page The page of search results
+     * @param protobuf Whether the client asked for protobuf
+     * @return 304 if the client holds the page, otherwise the page with its ETag, if any
+     */
+    private ResponseEntity<?> toResponse(HeroSearchPage page, boolean protobuf) {
+        ResponseEntity.BodyBuilder response = page.isNotModified()
+                ? ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                : ResponseEntity.ok();
+        response.varyBy(HttpHeaders.ACCEPT);
+        if (page.getETag() != null) {
+            response.eTag(EntityTags.tag(page.getETag(), protobuf));
+        }
+        if (page.isNotModified()) {
+            return response.build();
+        }
+        if (protobuf) {
+            return response.contentType(ProtobufNegotiation.PROTOBUF)
+                    .body(page.toSearchResponse().toByteArray());
+        }
+        return response.body(toPaginatedResult(page));
+    }
 
-            // Create paginated response
-            PaginatedSearchResultDto paginatedResponse = new PaginatedSearchResultDto(
-                results,
-                response.getCurrentPage(),
-                response.getTotalPages(),
-                response.getTotalCount()
-            );
+    /**
+     * Converts a page of search results to the paginated DTO.
+     *
+     * @param page The page of search results
+     * @return The page of search results
+     */
+    private PaginatedSearchResultDto toPaginatedResult(HeroSearchPage page) {
+        List<SearchResultDto> results = page.getHeroes().stream()
+                .map(hero -> new SearchResultDto(hero.getId(), hero.getName()))
+                .collect(Collectors.toList());
+
+        return new PaginatedSearchResultDto(
+            results,
+            page.getCurrentPage(),
+            page.getTotalPages(),
+            page.getTotalCount()
+        );
+    }
 
-            return ResponseEntity.ok(paginatedResponse);
-        } catch (Exception e) {
+    /**
+     * Maps a failed search or batch fetch to its HTTP status.
+     *
+     * @param throwable The failure
+     * @return The error response
+     */
+    private ResponseEntity<?> toErrorResponse(Throwable throwable) {
+        Throwable cause = HeroSearchService.unwrap(throwable);
+        if (cause instanceof TimeoutException) {
+            logger.warn("Request timed out after {}s", REQUEST_TIMEOUT_SECONDS);
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+        }
+        if (cause instanceof HeroSearchException searchException
+                && searchException.getReason() == HeroSearchException.Reason.RATE_LIMITED) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        if (cause instanceof HeroSearchException searchException
+                && searchException.getReason() == HeroSearchException.Reason.INVALID_REQUEST) {
             return ResponseEntity.badRequest().build();
         }
+        logger.error("Request failed", cause);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
     }
-}
\ No newline at end of file
+}
@@ -1,75 +1,114 @@
 package com.example.superheroproxy.controller;
 
+import com.example.superheroproxy.config.NotificationConfig;
 import com.example.superheroproxy.proto.HeroUpdate;
-import com.example.superheroproxy.proto.NotificationServiceGrpc;
-import com.example.superheroproxy.proto.SubscribeRequest;
-import com.example.superheroproxy.utils.Converter;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
-import io.grpc.stub.StreamObserver;
+import com.example.superheroproxy.service.NotificationService;
+import com.example.superheroproxy.service.SseHeartbeatScheduler;
+import com.example.superheroproxy.utils.HeroUpdateJsonEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
- * Controller that handles real-time notifications using Server-Sent Events (SSE) and gRPC.
+ * Controller that handles real-time notifications using Server-Sent Events (SSE).
  * This controller allows clients to subscribe to hero updates and receive them in real-time.
- * It maintains a connection with a gRPC notification service and forwards updates to subscribed clients.
- * 
+ *
  * The controller implements a pub-sub pattern where:
  * - Clients subscribe to updates via SSE
- * - The controller maintains a gRPC connection to the notification service
- * - Updates are forwarded from gRPC to SSE clients
- * - A ping mechanism keeps SSE connections alive
+ * - The controller registers one in-process listener with the notification service
+ * - Each update is encoded to JSON once, on the notification shard delivering it, and the same bytes
+ *   are queued for the emitters subscribed to its hero and to all heroes
+ * - Each emitter has a bounded queue, coalesced per hero and drained by a shared writer pool,
+ *   so slow clients fall behind or are disconnected without delaying the others
+ * - Pings from a shared heartbeat scheduler keep SSE connections alive
  */
 @RestController
 @RequestMapping("/api/notifications")
 public class NotificationController {
     private static final Logger logger = LoggerFactory.getLogger(NotificationController.class);
-    /** Map to store active SSE emitters for each subscription (hero ID or "all") */
-    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
-    
-    /** gRPC channel for communication with the notification service */
-    private final ManagedChannel channel;
-    
-    /** Asynchronous gRPC stub for making non-blocking calls */
-    private final NotificationServiceGrpc.NotificationServiceStub asyncStub;
+
+    /** Subscription ID of the emitters receiving updates for every hero */
+    private static final String ALL = "all";
+
+    /** Active SSE subscriptions by subscription ID (hero ID or "all") */
+    private final Map<String, List<SseSubscription>> emitters = new ConcurrentHashMap<>();
+
+    /** Service delivering the updates of this node */
+    private final NotificationService notificationService;
+
+    /** Shared scheduler sending the keep-alive pings of all SSE subscriptions */
+    private final SseHeartbeatScheduler heartbeatScheduler;
+
+    /** The listener registered with the notification service */
+    private final Consumer<HeroUpdate> updateListener = this::onHeroUpdate;
+
+    /** SSE settings: queue capacity, overflow policy and allowed lag */
+    private final NotificationConfig config;
+
+    /** Writes the queued updates of all emitters */
+    private final ExecutorService writerExecutor;
+
+    /** Updates dropped from full emitter queues */
+    private final AtomicLong droppedUpdates = new AtomicLong();
+
+    /** Clients disconnected for falling too far behind */
+    private final AtomicLong slowClientDisconnects = new AtomicLong();
 
     /**
-     * Constructs the NotificationController and initializes the gRPC connection.
-     * Sets up a managed channel with keep-alive settings to maintain the connection.
+     * State of one SSE connection.
+     */
+    private static final class SseSubscription {
+        final SseEmitter emitter;
+        final String subscriptionId;
+        /** Cleared once the connection completes, times out or fails */
+        final AtomicBoolean isActive = new AtomicBoolean(true);
+        volatile SseHeartbeatScheduler.Heartbeat heartbeat;
+        volatile SseWriteQueue queue;
+
+        SseSubscription(SseEmitter emitter, String subscriptionId) {
+            this.emitter = emitter;
+            this.subscriptionId = subscriptionId;
+        }
+    }
+
+    /**
+     * Constructs the NotificationController and registers its listener with the notification service.
      *
-     * @param host The host for the gRPC server
-     * @param port The port number for the gRPC server
-     * @param keepAliveTime The keep-alive time for the gRPC channel
-     * @param keepAliveTimeout The keep-alive timeout for the gRPC channel
-     * @param keepAliveWithoutCalls Flag indicating if the gRPC channel should keep alive without calls
+     * @param notificationService The service delivering hero updates on this node
+     * @param heartbeatScheduler The shared scheduler for SSE keep-alive pings
+     * @param config The notification configuration
      */
-    public NotificationController(@Value("${grpc.client.channel.host}") String host,
-                                @Value("${grpc.client.channel.port}") int port,
-                                @Value("${grpc.client.channel.keep-alive.time}") int keepAliveTime,
-                                @Value("${grpc.client.channel.keep-alive.timeout}") int keepAliveTimeout,
-                                @Value("${grpc.client.channel.keep-alive.without-calls}") boolean keepAliveWithoutCalls) {
-        this.channel = ManagedChannelBuilder.forAddress(host, port)
-                .usePlaintext()
-                .keepAliveTime(keepAliveTime, TimeUnit.SECONDS)
-                .keepAliveTimeout(keepAliveTimeout, TimeUnit.SECONDS)
-                .keepAliveWithoutCalls(keepAliveWithoutCalls)
-                .enableRetry()
-                .maxRetryAttempts(3)
-                .build();
-        this.asyncStub = NotificationServiceGrpc.newStub(channel);
+    public NotificationController(NotificationService notificationService, SseHeartbeatScheduler heartbeatScheduler,
+                                  NotificationConfig config) {
+        this.notificationService = notificationService;
+        this.heartbeatScheduler = heartbeatScheduler;
+        this.config = config;
+        AtomicInteger writerThreads = new AtomicInteger();
+        this.writerExecutor = Executors.newFixedThreadPool(config.getSseWriterThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "Sse-Writer-" + writerThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        notificationService.addLocalListener(updateListener);
     }
 
     /**
@@ -81,7 +120,7 @@ public class NotificationController {
      */
     @GetMapping(value = "/subscribe/{heroId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter subscribe(@PathVariable String heroId) {
-        return createSubscription(heroId, SubscribeRequest.newBuilder().setSubscribeAll(false).addHeroIds(heroId).build());
+        return createSubscription(heroId);
     }
 
     /**
@@ -92,7 +131,7 @@ public class NotificationController {
      */
     @GetMapping(value = "/subscribeAll", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter subscribeAll() {
-        return createSubscription("all", SubscribeRequest.newBuilder().setSubscribeAll(true).build());
+        return createSubscription(ALL);
     }
 
     /**
@@ -107,215 +146,200 @@ public class NotificationController {
     }
 
     /**
-     * Creates a new subscription with the specified ID and request.
-     * Sets up the SSE emitter, ping thread, and gRPC subscription.
+     * Creates a new subscription with the specified ID.
+     * Sets up the SSE emitter and its heartbeat, and adds it to the local index the updates are fanned out from.
      *
      * @param subscriptionId The ID for this subscription (hero ID or "all")
-     * @param request The gRPC subscription request
      * @return The configured SseEmitter
      */
-    private SseEmitter createSubscription(String subscriptionId, SubscribeRequest request) {
+    private SseEmitter createSubscription(String subscriptionId) {
         // Create a new SSE emitter with a 5-minute timeout
         SseEmitter emitter = new SseEmitter(300000L);
-        
-        // Add the emitter to the list for this subscription ID
-        emitters.computeIfAbsent(subscriptionId, k -> new CopyOnWriteArrayList<>()).add(emitter);
-        
-        // Flags to track the connection state
-        AtomicBoolean isActive = new AtomicBoolean(true);
-        AtomicBoolean isCompleted = new AtomicBoolean(false);
-
-        // Set up the ping thread to keep the connection alive
-        Thread pingThread = startPingThread(emitter, subscriptionId, isActive, isCompleted);
-        
+        SseSubscription subscription = new SseSubscription(emitter, subscriptionId);
+
+        // Updates for this client wait in its own bounded queue
+        subscription.queue = new SseWriteQueue(emitter, config.getSseQueueCapacity(),
+            config.getSseOverflowPolicy() == NotificationConfig.SseOverflowPolicy.DISCONNECT,
+            TimeUnit.SECONDS.toNanos(config.getSseMaxLagSeconds()), writerExecutor, e -> {
+                logger.error(subscriptionId + " error sending update", e);
+                disconnect(subscription, e);
+            });
+
+        // Schedule the pings that keep the connection alive
+        subscription.heartbeat = startHeartbeat(subscription);
+
         // Configure completion and timeout handlers
-        setupEmitterHandlers(emitter, subscriptionId, isActive, isCompleted, pingThread);
-        
-        // Set up the gRPC subscription
-        setupGrpcSubscription(emitter, subscriptionId, isActive, isCompleted, pingThread, request);
+        setupEmitterHandlers(subscription);
+
+        // Add the subscription to the list for this subscription ID
+        emitters.computeIfAbsent(subscriptionId, k -> new CopyOnWriteArrayList<>()).add(subscription);
 
         return emitter;
     }
 
     /**
-     * Creates and starts a background thread that sends periodic pings to keep the SSE connection alive.
+     * Starts the periodic pings that keep the SSE connection alive. The shared heartbeat scheduler times
+     * them and each ping is queued behind the client's updates, so it is written by the writer pool like
+     * an update; a failed ping write ends only this subscription.
      *
-     * @param emitter The SSE emitter to send pings to
-     * @param subscriptionId The ID of this subscription
-     * @param isActive Flag indicating if the subscription is active
-     * @param isCompleted Flag indicating if the subscription is completed
-     * @return The started ping thread
+     * @param subscription The subscription to ping
+     * @return The heartbeat, to cancel when the emitter completes
      */
-    private Thread startPingThread(SseEmitter emitter, String subscriptionId, 
-                                 AtomicBoolean isActive, AtomicBoolean isCompleted) {
-        Thread pingThread = new Thread(() -> {
-            final int MAX_RETRIES = 3;
-            final int RETRY_DELAY_MS = 5000; // 5 seconds between retries
-            
-            while (isActive.get() && !Thread.currentThread().isInterrupted()) {
-                int retryCount = 0;
-                boolean pingSuccessful = false;
-                
-                while (retryCount < MAX_RETRIES && !pingSuccessful) {
-                    try {
-                        if (!isCompleted.get()) {
-                            try {
-                                emitter.send(subscriptionId + " ping");
-                                pingSuccessful = true;
-                                logger.debug(subscriptionId + " ping successful");
-                            } catch (IOException e) {
-                                retryCount++;
-                                if (retryCount < MAX_RETRIES) {
-                                    logger.warn(subscriptionId + " ping attempt " + retryCount + " failed, retrying in " + RETRY_DELAY_MS + "ms", e);
-                                    Thread.sleep(RETRY_DELAY_MS);
-                                } else {
-                                    logger.error(subscriptionId + " ping failed after " + MAX_RETRIES + " attempts", e);
-                                    isActive.set(false);
-                                    break;
-                                }
-                            }
-                        } else {
-                            isActive.set(false);
-                            break;
-                        }
-                    } catch (InterruptedException e) {
-                        logger.warn(subscriptionId + " ping thread interrupted during retry", e);
-                        Thread.currentThread().interrupt();
-                        break;
-                    } catch (Exception e) {
-                        logger.error(subscriptionId + " Unexpected error in ping thread", e);
-                        isActive.set(false);
-                        break;
-                    }
-                }
-
-                if (!pingSuccessful) {
-                    break;
-                }
-
-                try {
-                    Thread.sleep(60000); // Send ping every 60 seconds
-                } catch (InterruptedException e) {
-                    logger.warn(subscriptionId + " ping thread interrupted", e);
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
-                    logger.error(subscriptionId + " Error in ping thread: " + e.getMessage());
-                }
+    private SseHeartbeatScheduler.Heartbeat startHeartbeat(SseSubscription subscription) {
+        String subscriptionId = subscription.subscriptionId;
+        byte[] ping = (subscriptionId + " ping").getBytes(StandardCharsets.UTF_8);
+        return heartbeatScheduler.start(subscriptionId, () -> {
+            SseWriteQueue.Offer offer;
+            try {
+                offer = subscription.queue.offerPing(ping);
+            } catch (RejectedExecutionException e) {
+                logger.debug("SSE writers stopped, not pinging {}", subscriptionId);
+                return;
             }
-            // Only cleanup if the subscription is manually unsubscribed
-            if (!isActive.get()) {
-                logger.warn(subscriptionId + " is NOT active");
-                cleanupSubscription(subscriptionId);
+            if (offer == SseWriteQueue.Offer.REJECTED && subscription.isActive.get()) {
+                logger.warn(subscriptionId + " SSE client is too slow, disconnecting");
+                slowClientDisconnects.incrementAndGet();
+                disconnect(subscription, null);
             }
         });
-        pingThread.setDaemon(true);
-        pingThread.start();
-        return pingThread;
     }
 
     /**
      * Sets up the completion and timeout handlers for the SSE emitter.
      *
-     * @param emitter The SSE emitter to configure
-     * @param subscriptionId The ID of this subscription
-     * @param isActive Flag indicating if the subscription is active
-     * @param isCompleted Flag indicating if the subscription is completed
-     * @param pingThread The ping thread to interrupt on completion/timeout
+     * @param subscription The subscription whose emitter to configure
      */
-    private void setupEmitterHandlers(SseEmitter emitter, String subscriptionId,
-                                    AtomicBoolean isActive, AtomicBoolean isCompleted,
-                                    Thread pingThread) {
+    private void setupEmitterHandlers(SseSubscription subscription) {
+        SseEmitter emitter = subscription.emitter;
         // Handle normal completion (client disconnection)
         emitter.onCompletion(() -> {
-            isActive.set(false);
-            isCompleted.set(true);
-            removeEmitter(subscriptionId, emitter);
-            pingThread.interrupt();
+            subscription.isActive.set(false);
+            removeEmitter(subscription);
+            subscription.heartbeat.cancel();
+            subscription.queue.close();
         });
 
         // Handle timeout
         emitter.onTimeout(() -> {
-            isActive.set(false);
-            isCompleted.set(true);
-            removeEmitter(subscriptionId, emitter);
-            pingThread.interrupt();
+            subscription.isActive.set(false);
+            removeEmitter(subscription);
+            subscription.heartbeat.cancel();
+            subscription.queue.close();
             emitter.complete();
         });
     }
 
     /**
-     * Sets up the gRPC subscription and configures the StreamObserver to handle updates.
+     * Receives every update delivered on this node, on the hero's notification shard. The update is
+     * encoded to JSON once and the same bytes are queued for the emitters subscribed to its hero and to
+     * all heroes. Queuing never blocks and every emitter queue is bounded, so neither a slow client nor
+     * a burst of updates can hold up the shard or grow memory without limit.
      *
-     * @param emitter The SSE emitter to send updates to
-     * @param subscriptionId The ID of this subscription
-     * @param isActive Flag indicating if the subscription is active
-     * @param isCompleted Flag indicating if the subscription is completed
-     * @param pingThread The ping thread to interrupt on errors
-     * @param request The gRPC subscription request
+     * @param update The delivered update
      */
-    private void setupGrpcSubscription(SseEmitter emitter, String subscriptionId,
-                                     AtomicBoolean isActive, AtomicBoolean isCompleted,
-                                     Thread pingThread, SubscribeRequest request) {
-        asyncStub.subscribeToUpdates(request, new StreamObserver<HeroUpdate>() {
-            @Override
-            public void onNext(HeroUpdate update) {
-                logger.debug(subscriptionId + " subscribeToUpdates onNext");
-                if (!isActive.get() || isCompleted.get()) {
-                    return;
-                }
-                try {
-                    // Convert the gRPC update to a map and send it to the client
-                    Map<String, Object> updateMap = Converter.convertHeroUpdateToMap(update);
-                    emitter.send(updateMap, MediaType.APPLICATION_JSON);
-                } catch (IOException e) {
-                    handleError(e);
-                } catch (Exception e) {
-                    handleError(e);
-                }
-            }
+    private void onHeroUpdate(HeroUpdate update) {
+        List<SseSubscription> heroSubscriptions = emitters.get(update.getHeroId());
+        List<SseSubscription> allSubscriptions = emitters.get(ALL);
+        if (heroSubscriptions == null && allSubscriptions == null) {
+            return;
+        }
+        byte[] payload = HeroUpdateJsonEncoder.encode(update);
+        send(heroSubscriptions, update.getHeroId(), payload);
+        send(allSubscriptions, update.getHeroId(), payload);
+    }
 
-            @Override
-            public void onError(Throwable t) {
-                logger.error(subscriptionId + " subscribeToUpdates error", t);
-                handleError(t);
+    private void send(List<SseSubscription> subscriptions, String heroId, byte[] payload) {
+        if (subscriptions == null) {
+            return;
+        }
+        for (SseSubscription subscription : subscriptions) {
+            if (!subscription.isActive.get()) {
+                continue;
             }
-
-            @Override
-            public void onCompleted() {
-                // Don't cleanup on completion, only on manual unsubscribe
-                pingThread.interrupt();
+            SseWriteQueue.Offer offer;
+            try {
+                offer = subscription.queue.offer(heroId, payload);
+            } catch (RejectedExecutionException e) {
+                logger.debug("SSE writers stopped, dropping update for hero: {}", heroId);
+                return;
+            }
+            if (offer == SseWriteQueue.Offer.DROPPED_OLDEST) {
+                droppedUpdates.incrementAndGet();
+            } else if (offer == SseWriteQueue.Offer.REJECTED && subscription.isActive.get()) {
+                logger.warn(subscription.subscriptionId + " SSE client is too slow, disconnecting");
+                slowClientDisconnects.incrementAndGet();
+                // Completing may wait for a write in progress, so it is left to a writer thread
+                disconnect(subscription, null);
             }
+        }
+    }
 
-            private void handleError(Throwable t) {
-                isActive.set(false);
-                isCompleted.set(true);
-                removeEmitter(subscriptionId, emitter);
-                pingThread.interrupt();
-                if (t instanceof Exception) {
-                    emitter.completeWithError((Exception) t);
+    /**
+     * Removes a subscription and completes its emitter on a writer thread.
+     *
+     * @param subscription The subscription to end
+     * @param error The write error that ended it, or null if the client was too slow
+     */
+    private void disconnect(SseSubscription subscription, Exception error) {
+        if (!subscription.isActive.getAndSet(false)) {
+            return;
+        }
+        removeEmitter(subscription);
+        subscription.heartbeat.cancel();
+        subscription.queue.close();
+        try {
+            writerExecutor.execute(() -> {
+                if (error != null) {
+                    subscription.emitter.completeWithError(error);
                 } else {
-                    emitter.complete();
+                    subscription.emitter.complete();
                 }
-            }
-        });
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("SSE writers stopped, not completing emitter for {}", subscription.subscriptionId);
+        }
     }
 
     /**
-     * Removes a specific emitter from the subscription list.
-     * If the list becomes empty after removal, the subscription ID is removed from the map.
+     * Returns the SSE fan-out metrics: connected clients, queued updates, updates dropped from full queues
+     * and clients disconnected for being too slow.
      *
-     * @param subscriptionId The ID of the subscription
-     * @param emitter The emitter to remove
+     * @return The metrics by name
      */
-    private void removeEmitter(String subscriptionId, SseEmitter emitter) {
-        List<SseEmitter> emitterList = emitters.get(subscriptionId);
-        if (emitterList != null) {
-            emitterList.remove(emitter);
-            if (emitterList.isEmpty()) {
-                emitters.remove(subscriptionId);
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        int activeEmitters = 0;
+        int queuedUpdates = 0;
+        int maxQueueDepth = 0;
+        for (List<SseSubscription> subscriptions : emitters.values()) {
+            for (SseSubscription subscription : subscriptions) {
+                int depth = subscription.queue.depth();
+                activeEmitters++;
+                queuedUpdates += depth;
+                maxQueueDepth = Math.max(maxQueueDepth, depth);
             }
         }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeEmitters", activeEmitters);
+        stats.put("queuedUpdates", queuedUpdates);
+        stats.put("maxQueueDepth", maxQueueDepth);
+        stats.put("droppedUpdates", droppedUpdates.get());
+        stats.put("slowClientDisconnects", slowClientDisconnects.get());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Removes a specific subscription from the subscription list.
+     * If the list becomes empty after removal, the subscription ID is removed from the map.
+     *
+     * @param subscription The subscription to remove
+     */
+    private void removeEmitter(SseSubscription subscription) {
+        emitters.computeIfPresent(subscription.subscriptionId, (id, subscriptions) -> {
+            subscriptions.remove(subscription);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
     }
 
     /**
@@ -326,9 +350,23 @@ public class NotificationController {
      */
     private void cleanupSubscription(String subscriptionId) {
         logger.info(subscriptionId + " cleanupSubscription");
-        List<SseEmitter> emitterList = emitters.remove(subscriptionId);
-        if (emitterList != null) {
-            emitterList.forEach(SseEmitter::complete);
+        List<SseSubscription> subscriptions = emitters.remove(subscriptionId);
+        if (subscriptions != null) {
+            subscriptions.forEach(subscription -> {
+                subscription.isActive.set(false);
+                subscription.heartbeat.cancel();
+                subscription.queue.close();
+                subscription.emitter.complete();
+            });
         }
     }
-} 
+
+    /**
+     * Unregisters the listener and stops the writers when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        notificationService.removeLocalListener(updateListener);
+        writerExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.superheroproxy.controller;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+/**
+ * Decides whether a REST client asked for protobuf instead of JSON.
+ *
+ * Protobuf is only sent when the Accept header names it explicitly and ranks it at least as high
+ * as JSON, so browsers and clients sending a wildcard keep receiving JSON. Protobuf responses are
+ * written as raw message bytes, without going through a message converter.
+ */
+final class ProtobufNegotiation {
+
+    /** Media type of protobuf-encoded responses */
+    static final MediaType PROTOBUF = MediaType.valueOf("application/x-protobuf");
+
+    private ProtobufNegotiation() {}
+
+    /**
+     * @param accept The Accept header of the request, or null
+     * @return Whether the response should be protobuf
+     */
+    static boolean prefersProtobuf(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return false;
+        }
+        double protobuf = 0;
+        double json = 0;
+        try {
+            for (MediaType type : MediaType.parseMediaTypes(accept)) {
+                if (PROTOBUF.equalsTypeAndSubtype(type)) {
+                    protobuf = Math.max(protobuf, type.getQualityValue());
+                } else if (MediaType.APPLICATION_JSON.equalsTypeAndSubtype(type)) {
+                    json = Math.max(json, type.getQualityValue());
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        return protobuf > 0 && protobuf >= json;
+    }
+}
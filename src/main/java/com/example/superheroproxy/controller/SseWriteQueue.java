@@ -0,0 +1,188 @@
+package com.example.superheroproxy.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Bounded write queue of one SSE emitter.
+ *
+ * Updates wait per hero, so a newer update for a hero replaces the one still queued for it and a client
+ * that falls behind receives the latest state instead of every intermediate one. The queue is drained by a
+ * shared writer pool, at most one drain per emitter at a time and a limited number of writes per turn, so
+ * a slow socket only holds up its own emitter. When the queue is full, the oldest update is dropped or the
+ * client is disconnected, depending on the overflow policy; a client that made no write progress for longer
+ * than the allowed lag is disconnected either way. Keep-alive pings go through the same queue, behind the
+ * updates, and are only queued when no update is waiting.
+ */
+class SseWriteQueue {
+
+    /** Outcome of offering an update */
+    enum Offer {
+        QUEUED,
+        /** Replaced an update for the same hero that was still queued */
+        COALESCED,
+        /** Queued after dropping the oldest queued update */
+        DROPPED_OLDEST,
+        /** Not queued: the queue is closed, or the client is too slow and has to be disconnected */
+        REJECTED
+    }
+
+    /** Writes per drain before the writer thread is handed to the next emitter */
+    private static final int MAX_WRITES_PER_DRAIN = 64;
+    /** Queue key of a keep-alive ping; never a hero ID */
+    private static final String PING = "\0ping";
+
+    private final SseEmitter emitter;
+    private final int capacity;
+    private final boolean disconnectOnOverflow;
+    private final long maxLagNanos;
+    private final Executor writer;
+    private final Consumer<Exception> onWriteError;
+
+    private final LinkedHashMap<String, byte[]> pending = new LinkedHashMap<>();
+    /** Last time a write completed, or the queue started a drain from idle */
+    private long lastProgressNanos;
+    private boolean draining;
+    private boolean closed;
+
+    /**
+     * @param emitter The emitter to write to
+     * @param capacity Maximum number of heroes with a queued update
+     * @param disconnectOnOverflow Whether a full queue disconnects the client instead of dropping the oldest update
+     * @param maxLagNanos Longest time a client with queued updates may go without a completed write
+     * @param writer The shared writer pool
+     * @param onWriteError Called on the writer thread when a write fails; the queue is closed by then
+     */
+    SseWriteQueue(SseEmitter emitter, int capacity, boolean disconnectOnOverflow, long maxLagNanos,
+                  Executor writer, Consumer<Exception> onWriteError) {
+        this.emitter = emitter;
+        this.capacity = capacity;
+        this.disconnectOnOverflow = disconnectOnOverflow;
+        this.maxLagNanos = maxLagNanos;
+        this.writer = writer;
+        this.onWriteError = onWriteError;
+    }
+
+    /**
+     * Queues an update for the emitter. Never blocks on the network.
+     *
+     * @param heroId The hero the update is about
+     * @param payload The encoded update
+     * @return What happened to the update; on {@link Offer#REJECTED} of an open queue the queue is closed
+     *         and the caller disconnects the client
+     */
+    synchronized Offer offer(String heroId, byte[] payload) {
+        if (closed) {
+            return Offer.REJECTED;
+        }
+        long now = System.nanoTime();
+        if (isLagging(now)) {
+            close();
+            return Offer.REJECTED;
+        }
+
+        Offer result;
+        if (pending.containsKey(heroId)) {
+            result = Offer.COALESCED;
+        } else if (pending.size() < capacity) {
+            result = Offer.QUEUED;
+        } else if (disconnectOnOverflow) {
+            close();
+            return Offer.REJECTED;
+        } else {
+            Iterator<String> oldest = pending.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+            result = Offer.DROPPED_OLDEST;
+        }
+        pending.put(heroId, payload);
+        startDraining(now);
+        return result;
+    }
+
+    /**
+     * Queues a keep-alive ping, unless an update is already waiting and will keep the connection alive
+     * itself. Like an update, a ping disconnects a client that made no write progress for too long.
+     *
+     * @param payload The encoded ping
+     * @return {@link Offer#QUEUED}, {@link Offer#COALESCED} if an update or ping was already waiting, or
+     *         {@link Offer#REJECTED} as for {@link #offer}
+     */
+    synchronized Offer offerPing(byte[] payload) {
+        if (closed) {
+            return Offer.REJECTED;
+        }
+        long now = System.nanoTime();
+        if (isLagging(now)) {
+            close();
+            return Offer.REJECTED;
+        }
+        if (!pending.isEmpty()) {
+            return Offer.COALESCED;
+        }
+        pending.put(PING, payload);
+        startDraining(now);
+        return Offer.QUEUED;
+    }
+
+    private boolean isLagging(long now) {
+        return draining && now - lastProgressNanos > maxLagNanos;
+    }
+
+    private void startDraining(long now) {
+        if (!draining) {
+            draining = true;
+            lastProgressNanos = now;
+            writer.execute(this::drain);
+        }
+    }
+
+    /**
+     * Stops writing and discards the queued updates.
+     */
+    synchronized void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    /**
+     * @return The number of heroes with a queued update, plus a queued ping
+     */
+    synchronized int depth() {
+        return pending.size();
+    }
+
+    private void drain() {
+        for (int writes = 0; writes < MAX_WRITES_PER_DRAIN; writes++) {
+            byte[] payload;
+            synchronized (this) {
+                if (closed || pending.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+                Iterator<Map.Entry<String, byte[]>> next = pending.entrySet().iterator();
+                payload = next.next().getValue();
+                next.remove();
+            }
+            try {
+                // Written as-is by the byte array converter
+                emitter.send(payload, MediaType.APPLICATION_JSON);
+            } catch (Exception e) {
+                close();
+                onWriteError.accept(e);
+                return;
+            }
+            synchronized (this) {
+                lastProgressNanos = System.nanoTime();
+            }
+        }
+        // Let other emitters have the writer thread before continuing
+        writer.execute(this::drain);
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.superheroproxy.service;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.proto.HeroUpdate;
+import com.example.superheroproxy.proto.PowerStatThreshold;
+import com.example.superheroproxy.proto.PowerStats;
+import com.example.superheroproxy.proto.SubscriptionFilter;
+import com.example.superheroproxy.proto.UpdateType;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+
+/**
+ * A {@link SubscriptionFilter} prepared for matching at dispatch time.
+ *
+ * Publisher and alignment are turned into index keys for {@link SubscriptionIndex}, so an update
+ * only reaches subscribers registered under its publisher and alignment. Update types and powerstat
+ * thresholds are the residual predicates checked on the subscribers found through the index.
+ * Text values are normalized once here, stat names are resolved to descriptor fields once here.
+ */
+public final class CompiledSubscriptionFilter {
+
+    /** Filter matching every update */
+    public static final CompiledSubscriptionFilter MATCH_ALL = compile(SubscriptionFilter.getDefaultInstance());
+
+    /** Index key component matching any value */
+    static final String ANY = "*";
+
+    private final Set<String> publishers;
+    private final Set<String> alignments;
+    private final Set<UpdateType> updateTypes;
+    private final List<Threshold> thresholds;
+
+    private CompiledSubscriptionFilter(Set<String> publishers, Set<String> alignments,
+                                       Set<UpdateType> updateTypes, List<Threshold> thresholds) {
+        this.publishers = publishers;
+        this.alignments = alignments;
+        this.updateTypes = updateTypes;
+        this.thresholds = thresholds;
+    }
+
+    /**
+     * Compiles a filter from a subscription request.
+     *
+     * @param filter The requested filter
+     * @return The compiled filter
+     * @throws IllegalArgumentException if a threshold names a field that is not a powerstat
+     */
+    public static CompiledSubscriptionFilter compile(SubscriptionFilter filter) {
+        Set<UpdateType> updateTypes = filter.getUpdateTypesList().isEmpty()
+                ? EnumSet.allOf(UpdateType.class)
+                : EnumSet.copyOf(filter.getUpdateTypesList());
+
+        List<Threshold> thresholds = new ArrayList<>();
+        for (PowerStatThreshold threshold : filter.getMinPowerstatsList()) {
+            FieldDescriptor field = PowerStats.getDescriptor().findFieldByName(normalize(threshold.getStat()));
+            if (field == null || field.getJavaType() != FieldDescriptor.JavaType.STRING) {
+                throw new IllegalArgumentException("Unknown powerstat: " + threshold.getStat());
+            }
+            thresholds.add(new Threshold(field, threshold.getMin()));
+        }
+
+        return new CompiledSubscriptionFilter(
+                normalizeAll(filter.getPublishersList()),
+                normalizeAll(filter.getAlignmentsList()),
+                updateTypes,
+                List.copyOf(thresholds));
+    }
+
+    /**
+     * Returns a canonical form of the filter: two filters with the same canonical key match exactly the same updates.
+     *
+     * @return The canonical key
+     */
+    public String canonicalKey() {
+        return String.join(";",
+                String.join(",", new TreeSet<>(publishers)),
+                String.join(",", new TreeSet<>(alignments)),
+                updateTypes.stream().map(UpdateType::name).collect(Collectors.joining(",")),
+                thresholds.stream().map(Threshold::canonicalKey).sorted().collect(Collectors.joining(",")));
+    }
+
+    /**
+     * Returns the index keys this filter registers under: one per publisher and alignment combination,
+     * with {@link #ANY} standing in for a criterion that is not set.
+     *
+     * @return The index keys
+     */
+    List<String> indexKeys() {
+        Set<String> publisherKeys = publishers.isEmpty() ? Set.of(ANY) : publishers;
+        Set<String> alignmentKeys = alignments.isEmpty() ? Set.of(ANY) : alignments;
+        List<String> keys = new ArrayList<>();
+        for (String publisher : publisherKeys) {
+            for (String alignment : alignmentKeys) {
+                keys.add(indexKey(publisher, alignment));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the keys an update is looked up under: its own publisher and alignment, and each
+     * combination with {@link #ANY}.
+     *
+     * @param hero The hero carried by the update
+     * @return The four lookup keys
+     */
+    static List<String> lookupKeys(Hero hero) {
+        String publisher = normalize(hero.getBiography().getPublisher());
+        String alignment = normalize(hero.getBiography().getAlignment());
+        return List.of(
+                indexKey(publisher, alignment),
+                indexKey(publisher, ANY),
+                indexKey(ANY, alignment),
+                indexKey(ANY, ANY));
+    }
+
+    /**
+     * Checks the predicates not covered by the index.
+     *
+     * @param update The update found through one of this filter's index keys
+     * @return true if the update matches
+     */
+    boolean matchesResidual(HeroUpdate update) {
+        return updateTypes.contains(update.getUpdateType()) && meetsThresholds(update.getHero().getPowerstats());
+    }
+
+    private boolean meetsThresholds(PowerStats powerstats) {
+        for (Threshold threshold : thresholds) {
+            if (!threshold.isMetBy(powerstats)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks every predicate, for subscribers that are not reached through the index.
+     *
+     * @param update The full update
+     * @return true if the update matches
+     */
+    public boolean matches(HeroUpdate update) {
+        return updateTypes.contains(update.getUpdateType()) && matchesHero(update.getHero());
+    }
+
+    /**
+     * Checks the criteria on the hero itself, ignoring the update type.
+     *
+     * @param hero The hero
+     * @return true if the hero matches
+     */
+    public boolean matchesHero(Hero hero) {
+        if (!publishers.isEmpty() && !publishers.contains(normalize(hero.getBiography().getPublisher()))) {
+            return false;
+        }
+        if (!alignments.isEmpty() && !alignments.contains(normalize(hero.getBiography().getAlignment()))) {
+            return false;
+        }
+        return meetsThresholds(hero.getPowerstats());
+    }
+
+    private static String indexKey(String publisher, String alignment) {
+        return publisher + '\u0000' + alignment;
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> normalizeAll(List<String> values) {
+        return values.stream().map(CompiledSubscriptionFilter::normalize).collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Minimum value for one powerstat. Stats are strings in the source data and may be "null".
+     */
+    private record Threshold(FieldDescriptor field, int min) {
+
+        String canonicalKey() {
+            return field.getName() + ">=" + min;
+        }
+
+        boolean isMetBy(PowerStats powerstats) {
+            try {
+                return Integer.parseInt(((String) powerstats.getField(field)).trim()) >= min;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+}
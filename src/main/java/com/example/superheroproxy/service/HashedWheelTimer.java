@@ -0,0 +1,225 @@
+package com.example.superheroproxy.service;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timer for large numbers of short, mostly-cancelled timeouts.
+ *
+ * Time is divided into ticks and timeouts are hashed into a fixed ring of buckets by the tick
+ * they expire on; a timeout more than one revolution away also records how many full
+ * revolutions remain. A single worker thread advances one bucket per tick, so scheduling and
+ * cancelling are O(1) and each tick only touches the timeouts hashed to the current bucket,
+ * instead of scanning every pending timeout. Expiry has tick precision.
+ *
+ * New timeouts are handed to the worker through a lock-free queue; buckets are only touched by
+ * the worker. Tasks run on the worker thread and must be short and non-blocking.
+ */
+public class HashedWheelTimer {
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private final long tickNanos;
+    private final Queue<Timeout>[] wheel;
+    private final int mask;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread worker;
+    private final long startNanos;
+    private volatile boolean running = true;
+
+    /**
+     * Creates the timer and starts its worker thread.
+     *
+     * @param tickDuration Duration of one tick, the timer's precision
+     * @param unit Unit of the tick duration
+     * @param wheelSize Number of buckets, rounded up to a power of two
+     * @param threadName Name of the worker thread
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize, String threadName) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.mask = size - 1;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a task to run once after the given delay.
+     *
+     * @param task The task to run on the timer thread
+     * @param delay Delay before the task runs
+     * @param unit Unit of the delay
+     * @return A handle to cancel the task
+     * @throws IllegalStateException if the timer was stopped
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer is stopped");
+        }
+        long deadline = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(task, deadline);
+        pending.incrementAndGet();
+        incoming.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the number of scheduled tasks that have neither run nor been discarded after cancellation.
+     *
+     * @return The number of pending timeouts
+     */
+    public int pendingTimeouts() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the worker thread. Pending tasks are discarded.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while stopping timer {}", worker.getName(), e);
+        }
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            if (!awaitTick(tick)) {
+                return;
+            }
+            transferIncoming(tick);
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    /**
+     * Sleeps until the given tick has fully elapsed.
+     *
+     * @return false if the timer was stopped while waiting
+     */
+    private boolean awaitTick(long tick) {
+        long tickEnd = (tick + 1) * tickNanos;
+        while (true) {
+            long sleepNanos = tickEnd - (System.nanoTime() - startNanos);
+            if (sleepNanos <= 0) {
+                return true;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Moves newly scheduled timeouts into their buckets. Timeouts already due land in the current bucket.
+     */
+    private void transferIncoming(long currentTick) {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.isCancelled()) {
+                pending.decrementAndGet();
+                continue;
+            }
+            long expiryTick = Math.max(timeout.deadline / tickNanos, currentTick);
+            timeout.remainingRounds = (expiryTick - currentTick) / wheel.length;
+            wheel[(int) (expiryTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Runs the timeouts of the current bucket that are due in this revolution and drops cancelled ones.
+     */
+    private void expire(Queue<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.isCancelled()) {
+                iterator.remove();
+                pending.decrementAndGet();
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                iterator.remove();
+                pending.decrementAndGet();
+                timeout.expire();
+            }
+        }
+    }
+
+    /**
+     * Handle for a scheduled task.
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        /** Full revolutions left before the timeout is due; only accessed by the worker thread */
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task if it has not run yet. The timeout is discarded lazily when the
+         * worker reaches its bucket.
+         *
+         * @return true if the task will not run, false if it already ran
+         */
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED) || state.get() == CANCELLED;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Error running timer task", e);
+            }
+        }
+    }
+}
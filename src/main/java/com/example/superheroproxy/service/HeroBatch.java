@@ -0,0 +1,44 @@
+package com.example.superheroproxy.service;
+
+import java.util.List;
+
+import com.example.superheroproxy.proto.GetHeroesResponse;
+import com.example.superheroproxy.proto.Hero;
+
+/**
+ * Result of fetching heroes by ID, independent of the transport that asked for it.
+ */
+public class HeroBatch {
+
+    private final List<Hero> heroes;
+    private final List<String> missingIds;
+
+    /**
+     * @param heroes The found heroes, in request order
+     * @param missingIds The IDs that are unknown or could not be fetched, in request order
+     */
+    public HeroBatch(List<Hero> heroes, List<String> missingIds) {
+        this.heroes = List.copyOf(heroes);
+        this.missingIds = List.copyOf(missingIds);
+    }
+
+    public List<Hero> getHeroes() {
+        return heroes;
+    }
+
+    public List<String> getMissingIds() {
+        return missingIds;
+    }
+
+    /**
+     * Converts the batch to the protobuf response, as sent to gRPC and protobuf REST clients.
+     *
+     * @return The response
+     */
+    public GetHeroesResponse toResponse() {
+        return GetHeroesResponse.newBuilder()
+                .addAllHeroes(heroes)
+                .addAllMissingIds(missingIds)
+                .build();
+    }
+}
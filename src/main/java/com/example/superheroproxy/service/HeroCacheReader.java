@@ -0,0 +1,252 @@
+package com.example.superheroproxy.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Service;
+
+import com.example.superheroproxy.config.CacheConfig;
+import com.example.superheroproxy.config.ETagRedisCacheWriter;
+import com.example.superheroproxy.config.ProtobufRedisSerializer;
+import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.utils.ContentHash;
+import com.example.superheroproxy.utils.FieldMaskSlicer;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Reads many heroes from the superhero cache in one round trip.
+ *
+ * Spring's {@link Cache} abstraction only offers single-key reads, which costs one network round
+ * trip per hero against Redis. This reader goes to the native cache instead: a single MGET for
+ * Redis, a single bulk lookup for Caffeine. Other cache implementations fall back to per-key reads.
+ */
+@Service
+public class HeroCacheReader {
+    private static final Logger logger = LoggerFactory.getLogger(HeroCacheReader.class);
+
+    /** Keys per MGET when reading the whole cache */
+    private static final int MGET_CHUNK_SIZE = 500;
+
+    private final CacheManager cacheManager;
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final ProtobufRedisSerializer serializer = new ProtobufRedisSerializer();
+
+    public HeroCacheReader(CacheManager cacheManager, RedisConnectionFactory redisConnectionFactory) {
+        this.cacheManager = cacheManager;
+        this.redisConnectionFactory = redisConnectionFactory;
+    }
+
+    /**
+     * Returns the cached heroes for the given IDs. IDs that are not cached are left out.
+     *
+     * @param heroIds The hero IDs to read
+     * @return Cached heroes by ID, in the order of the given IDs
+     */
+    public Map<String, Hero> getHeroes(Collection<String> heroIds) {
+        return getHeroes(heroIds, null);
+    }
+
+    /**
+     * Returns the cached heroes for the given IDs, pruned to the fields of a mask. With Redis the
+     * stored bytes are sliced before parsing, so the fields left out are never decoded.
+     *
+     * @param heroIds The hero IDs to read
+     * @param slicer The compiled field mask, or null for whole heroes
+     * @return Cached heroes by ID, in the order of the given IDs
+     */
+    public Map<String, Hero> getHeroes(Collection<String> heroIds, FieldMaskSlicer slicer) {
+        Cache cache = cacheManager.getCache(CacheConfig.SUPERHERO_CACHE);
+        if (cache == null || heroIds.isEmpty()) {
+            return Map.of();
+        }
+        if (cache instanceof RedisCache redisCache) {
+            return readRedis(redisCache, heroIds, slicer);
+        }
+
+        Map<String, Hero> heroes;
+        if (cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeine) {
+            heroes = toHeroes(heroIds, readCaffeine(caffeine, heroIds));
+        } else {
+            heroes = new LinkedHashMap<>();
+            for (String heroId : heroIds) {
+                Hero hero = cache.get(heroId, Hero.class);
+                if (hero != null) {
+                    heroes.put(heroId, hero);
+                }
+            }
+        }
+        if (slicer != null) {
+            heroes.replaceAll((heroId, hero) -> slicer.apply(hero));
+        }
+        return heroes;
+    }
+
+    /**
+     * Returns the protobuf encoding of a cached hero. Redis values are unwrapped without
+     * parsing the hero; other caches encode the cached message.
+     *
+     * @param heroId The hero ID to read
+     * @return The encoded {@link Hero}, or null if the hero is not cached
+     */
+    public byte[] getHeroBytes(String heroId) {
+        Cache cache = cacheManager.getCache(CacheConfig.SUPERHERO_CACHE);
+        if (cache == null) {
+            return null;
+        }
+        if (cache instanceof RedisCache redisCache) {
+            String prefix = redisCache.getCacheConfiguration().getKeyPrefixFor(redisCache.getName());
+            try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+                byte[] value = connection.stringCommands().get((prefix + heroId).getBytes(StandardCharsets.UTF_8));
+                return serializer.deserializeMessageBytes(value);
+            }
+        }
+        Hero hero = cache.get(heroId, Hero.class);
+        return hero == null ? null : hero.toByteArray();
+    }
+
+    /**
+     * Returns the entity tags of cached heroes. With Redis only the tags kept next to the entries by
+     * {@link ETagRedisCacheWriter} are read, never the heroes; other caches hash the cached heroes.
+     * Look the tag up before the hero when both are needed, so a hero is never labelled with a newer tag.
+     *
+     * @param heroIds The hero IDs to read
+     * @return Entity tags by hero ID, in the order of the given IDs; heroes without a tag are left out
+     */
+    public Map<String, String> getHeroETags(Collection<String> heroIds) {
+        Cache cache = cacheManager.getCache(CacheConfig.SUPERHERO_CACHE);
+        if (cache == null || heroIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> eTags = new LinkedHashMap<>();
+        if (cache instanceof RedisCache redisCache) {
+            String prefix = redisCache.getCacheConfiguration().getKeyPrefixFor(redisCache.getName());
+            List<String> ids = new ArrayList<>(heroIds);
+            byte[][] keys = ids.stream()
+                    .map(id -> ETagRedisCacheWriter.eTagKey((prefix + id).getBytes(StandardCharsets.UTF_8)))
+                    .toArray(byte[][]::new);
+            try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+                List<byte[]> values = connection.stringCommands().mGet(keys);
+                for (int i = 0; i < ids.size(); i++) {
+                    byte[] value = values == null ? null : values.get(i);
+                    if (value != null) {
+                        eTags.put(ids.get(i), new String(value, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            return eTags;
+        }
+        getHeroes(heroIds).forEach((heroId, hero) -> eTags.put(heroId, ContentHash.of(hero.toByteArray())));
+        return eTags;
+    }
+
+    /**
+     * Returns every hero currently in the cache.
+     *
+     * @return Cached heroes by ID
+     */
+    public Map<String, Hero> getAllHeroes() {
+        Cache cache = cacheManager.getCache(CacheConfig.SUPERHERO_CACHE);
+        if (cache == null) {
+            return Map.of();
+        }
+        if (cache instanceof RedisCache redisCache) {
+            return readRedis(redisCache, scanRedisIds(redisCache), null);
+        }
+        if (cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeine) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            caffeine.asMap().forEach((key, value) -> values.put(String.valueOf(key), value));
+            return toHeroes(values.keySet(), values);
+        }
+        logger.warn("Cache {} cannot be enumerated, returning no heroes", cache.getClass().getName());
+        return Map.of();
+    }
+
+    private Map<String, Hero> readRedis(RedisCache cache, Collection<String> heroIds, FieldMaskSlicer slicer) {
+        String prefix = cache.getCacheConfiguration().getKeyPrefixFor(cache.getName());
+        List<String> ids = new ArrayList<>(heroIds);
+        Map<String, Hero> heroes = new LinkedHashMap<>();
+        try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+            for (int start = 0; start < ids.size(); start += MGET_CHUNK_SIZE) {
+                List<String> chunk = ids.subList(start, Math.min(start + MGET_CHUNK_SIZE, ids.size()));
+                byte[][] keys = chunk.stream()
+                        .map(id -> (prefix + id).getBytes(StandardCharsets.UTF_8))
+                        .toArray(byte[][]::new);
+                List<byte[]> values = connection.stringCommands().mGet(keys);
+                for (int i = 0; i < chunk.size(); i++) {
+                    byte[] value = values == null ? null : values.get(i);
+                    if (value == null) {
+                        continue;
+                    }
+                    if (slicer == null) {
+                        if (serializer.deserialize(value) instanceof Hero hero) {
+                            heroes.put(chunk.get(i), hero);
+                        }
+                    } else {
+                        Hero hero = parseSliced(serializer.deserializeMessageBytes(value), slicer);
+                        if (hero != null) {
+                            heroes.put(chunk.get(i), hero);
+                        }
+                    }
+                }
+            }
+        }
+        return heroes;
+    }
+
+    private Hero parseSliced(byte[] heroBytes, FieldMaskSlicer slicer) {
+        if (heroBytes == null) {
+            return null;
+        }
+        try {
+            return Hero.parseFrom(slicer.slice(heroBytes));
+        } catch (InvalidProtocolBufferException e) {
+            logger.warn("Skipping cached hero that could not be sliced", e);
+            return null;
+        }
+    }
+
+    private List<String> scanRedisIds(RedisCache cache) {
+        String prefix = cache.getCacheConfiguration().getKeyPrefixFor(cache.getName());
+        List<String> ids = new ArrayList<>();
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(MGET_CHUNK_SIZE).build();
+        try (RedisConnection connection = redisConnectionFactory.getConnection();
+             Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+            while (cursor.hasNext()) {
+                ids.add(new String(cursor.next(), StandardCharsets.UTF_8).substring(prefix.length()));
+            }
+        }
+        return ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readCaffeine(com.github.benmanes.caffeine.cache.Cache<?, ?> caffeine, Collection<String> heroIds) {
+        Map<Object, Object> present = ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) caffeine)
+                .getAllPresent(new ArrayList<Object>(heroIds));
+        Map<String, Object> values = new LinkedHashMap<>();
+        present.forEach((key, value) -> values.put(String.valueOf(key), value));
+        return values;
+    }
+
+    private Map<String, Hero> toHeroes(Collection<String> heroIds, Map<String, Object> values) {
+        Map<String, Hero> heroes = new LinkedHashMap<>();
+        for (String heroId : heroIds) {
+            if (values.get(heroId) instanceof Hero hero) {
+                heroes.put(heroId, hero);
+            }
+        }
+        return heroes;
+    }
+}
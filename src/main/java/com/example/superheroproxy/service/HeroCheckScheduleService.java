@@ -149,12 +149,10 @@ public class HeroCheckScheduleService {
                 cache.put(heroId, newHero);
                 logger.info("Added new hero to cache: {}", heroId);
                 notificationService.notifyHeroUpdate(heroId, newHero, UpdateType.NEW);
-                notificationService.sendHeroUpdateToKafka(heroId, newHero, UpdateType.NEW);
             } else if (!cachedHero.equals(newHero) || foreUpdate(newHero)) {
                 cache.put(heroId, newHero);
                 logger.info("Updated cache for hero: {}", heroId);
                 notificationService.notifyHeroUpdate(heroId, newHero, UpdateType.UPDATED);
-                notificationService.sendHeroUpdateToKafka(heroId, newHero, UpdateType.UPDATED);
             } else {
                 logger.debug("No changes detected for hero: {}", heroId);
             }
@@ -0,0 +1,36 @@
+package com.example.superheroproxy.service;
+
+/**
+ * Failure of a hero search or batch fetch, typed so that each transport can map it to its own status.
+ */
+public class HeroSearchException extends RuntimeException {
+
+    /** Why a search failed */
+    public enum Reason {
+        /** The search rate limit was exceeded; the caller may retry later */
+        RATE_LIMITED,
+        /** Looking up the matching heroes failed */
+        LOOKUP_FAILED,
+        /** The request cannot be served as made, for example because it asks for too many heroes */
+        INVALID_REQUEST
+    }
+
+    private final Reason reason;
+
+    /**
+     * @param reason Why the search failed
+     * @param message The failure description
+     * @param cause The underlying failure, or null
+     */
+    public HeroSearchException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    /**
+     * @return Why the search failed
+     */
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.superheroproxy.service;
+
+import java.util.List;
+
+import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.proto.SearchResponse;
+
+/**
+ * One page of hero search results, independent of the transport that asked for it.
+ * The gRPC service turns it into a {@code SearchResponse} and the REST controller into its DTOs.
+ */
+public class HeroSearchPage {
+
+    private final String query;
+    private final List<Hero> heroes;
+    private final int currentPage;
+    private final int totalPages;
+    private final int totalCount;
+    private final String eTag;
+    private final boolean notModified;
+    private final String nextPageToken;
+
+    /**
+     * @param query The name that was searched for
+     * @param heroes The heroes of the page, in search order
+     * @param currentPage The page number, after clamping to the last page
+     * @param totalPages The number of pages
+     * @param totalCount The number of heroes matching the search
+     */
+    public HeroSearchPage(String query, List<Hero> heroes, int currentPage, int totalPages, int totalCount) {
+        this(query, heroes, currentPage, totalPages, totalCount, null, null);
+    }
+
+    /**
+     * @param query The name that was searched for
+     * @param heroes The heroes of the page, in search order
+     * @param currentPage The page number, after clamping to the last page
+     * @param totalPages The number of pages
+     * @param totalCount The number of heroes matching the search
+     * @param eTag The entity tag of the page, or null if it has none
+     */
+    public HeroSearchPage(String query, List<Hero> heroes, int currentPage, int totalPages, int totalCount, String eTag) {
+        this(query, heroes, currentPage, totalPages, totalCount, eTag, null);
+    }
+
+    /**
+     * @param query The name that was searched for
+     * @param heroes The heroes of the page, in search order
+     * @param currentPage The page number, after clamping to the last page
+     * @param totalPages The number of pages
+     * @param totalCount The number of heroes matching the search
+     * @param eTag The entity tag of the page, or null if it has none
+     * @param nextPageToken The token of the next page, or null if this is the last one
+     */
+    public HeroSearchPage(String query, List<Hero> heroes, int currentPage, int totalPages, int totalCount, String eTag,
+                          String nextPageToken) {
+        this(query, heroes, currentPage, totalPages, totalCount, eTag, false, nextPageToken);
+    }
+
+    private HeroSearchPage(String query, List<Hero> heroes, int currentPage, int totalPages, int totalCount,
+                           String eTag, boolean notModified, String nextPageToken) {
+        this.query = query;
+        this.heroes = List.copyOf(heroes);
+        this.currentPage = currentPage;
+        this.totalPages = totalPages;
+        this.totalCount = totalCount;
+        this.eTag = eTag;
+        this.notModified = notModified;
+        this.nextPageToken = nextPageToken;
+    }
+
+    /**
+     * Creates a page the caller already holds, without its heroes.
+     *
+     * @param query The name that was searched for
+     * @param currentPage The page number, after clamping to the last page
+     * @param totalPages The number of pages
+     * @param totalCount The number of heroes matching the search
+     * @param eTag The entity tag the caller holds
+     * @return The page, marked as not modified
+     */
+    public static HeroSearchPage notModified(String query, int currentPage, int totalPages, int totalCount, String eTag) {
+        return new HeroSearchPage(query, List.of(), currentPage, totalPages, totalCount, eTag, true, null);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<Hero> getHeroes() {
+        return heroes;
+    }
+
+    public int getCurrentPage() {
+        return currentPage;
+    }
+
+    public int getTotalPages() {
+        return totalPages;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return The entity tag of the page, derived from its position and the tags of its heroes, or null
+     *         if the page was not tagged
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * @return Whether the caller already holds this page, in which case it carries no heroes
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * @return The token that continues the search with the next page of the same results, or null if this
+     *         is the last page
+     */
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    /**
+     * Converts the page to the protobuf search response, as sent to gRPC and protobuf REST clients.
+     *
+     * @return The search response
+     */
+    public SearchResponse toSearchResponse() {
+        SearchResponse.Builder response = SearchResponse.newBuilder()
+                .setResponse("success")
+                .setResultsFor(query)
+                .setTotalCount(totalCount)
+                .setCurrentPage(currentPage)
+                .setTotalPages(totalPages)
+                .addAllResults(heroes);
+        if (nextPageToken != null) {
+            response.setNextPageToken(nextPageToken);
+        }
+        return response.build();
+    }
+}
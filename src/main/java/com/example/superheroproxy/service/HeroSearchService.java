@@ -0,0 +1,699 @@
+package com.example.superheroproxy.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.example.superheroproxy.config.AppConfig;
+import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.utils.ContentHash;
+import com.example.superheroproxy.utils.FieldMaskSlicer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hasher;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.protobuf.FieldMask;
+
+/**
+ * Transport-neutral hero search and batch fetch shared by the gRPC service and the REST controller.
+ *
+ * Searches run on the async executor and never block the caller: the matching hero IDs are looked up,
+ * the requested page is cut from them and its heroes are fetched in parallel. Failures are reported as
+ * {@link HeroSearchException} so each transport can map them to its own status.
+ *
+ * Pages can be tagged for conditional requests. The tag is built from the page's position and the
+ * entity tags kept next to its cached heroes, so a caller that already holds the page is answered
+ * without fetching or decoding any hero.
+ *
+ * Heroes can also be fetched by ID. A batch is served from one bulk cache read; only the heroes missing
+ * from the cache are fetched, in parallel and coalesced with concurrent fetches of the same hero.
+ * Searches fetch their page the same way, and streamed searches hand out each hero as soon as it is available.
+ *
+ * Searches and batches can be limited to the hero fields named by a read mask. Cached heroes are then
+ * sliced from their stored bytes before decoding, and fetched heroes are pruned before they are handed out.
+ *
+ * Pages that are not the last one come with a page token. The token names a snapshot of the ordered result
+ * list and an offset into it, so the next page is cut from the snapshot in proportion to the page size,
+ * without searching again, and stays consistent with the pages before it. Results are ordered by hero ID.
+ */
+@Service
+public class HeroSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeroSearchService.class);
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    /** How long a result snapshot is kept after its last use */
+    private static final Duration SNAPSHOT_TTL = Duration.ofMinutes(10);
+    private static final int MAX_SNAPSHOTS = 10_000;
+    /** Orders hero IDs, numeric IDs in numeric order */
+    private static final Comparator<String> ID_ORDER =
+        Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+
+    /** Most distinct hero IDs one batch may ask for */
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private final SuperheroInnerService superheroInnerService;
+    private final RateLimiter rateLimiter;
+    private final Executor executor;
+    private final HeroCacheReader heroCacheReader;
+    /** Ordered result lists handed out page by page, by version */
+    private final Cache<String, SearchSnapshot> snapshots = Caffeine.newBuilder()
+        .expireAfterAccess(SNAPSHOT_TTL)
+        .maximumSize(MAX_SNAPSHOTS)
+        .build();
+
+    /**
+     * Constructs a new HeroSearchService whose pages are never tagged and whose batches are read per hero.
+     *
+     * @param superheroInnerService The service that looks up hero IDs and heroes
+     * @param rateLimiter The rate limiter for controlling the rate of searches
+     * @param appConfig The application configuration providing the async executor
+     */
+    public HeroSearchService(SuperheroInnerService superheroInnerService, RateLimiter rateLimiter, AppConfig appConfig) {
+        this(superheroInnerService, rateLimiter, appConfig, null);
+    }
+
+    /**
+     * Constructs a new HeroSearchService.
+     *
+     * @param superheroInnerService The service that looks up hero IDs and heroes
+     * @param rateLimiter The rate limiter for controlling the rate of searches
+     * @param appConfig The application configuration providing the async executor
+     * @param heroCacheReader Reads cached heroes and their entity tags in bulk, or null to never tag pages
+     *                        and read batches per hero
+     */
+    @Autowired
+    public HeroSearchService(SuperheroInnerService superheroInnerService, RateLimiter rateLimiter, AppConfig appConfig,
+                             HeroCacheReader heroCacheReader) {
+        this.superheroInnerService = superheroInnerService;
+        this.rateLimiter = rateLimiter;
+        this.executor = appConfig.getAsyncExecutor();
+        this.heroCacheReader = heroCacheReader;
+    }
+
+    /**
+     * Searches for heroes by name without blocking the caller.
+     * A page number past the last page returns the last page; non-positive values select the defaults.
+     *
+     * @param name The name to search for
+     * @param pageNumber The page to retrieve, starting at 1
+     * @param pageSize The number of heroes per page
+     * @return A future completed with the page, or exceptionally with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroSearchPage> search(String name, int pageNumber, int pageSize) {
+        return runSearch(name, pageNumber, pageSize, null, null, null);
+    }
+
+    /**
+     * Searches like {@link #search(String, int, int)}, returning only the hero fields named by a mask.
+     *
+     * @param name The name to search for
+     * @param pageNumber The page to retrieve, starting at 1
+     * @param pageSize The number of heroes per page
+     * @param readMask The hero fields to return; null or empty for whole heroes
+     * @return A future completed with the page, or exceptionally with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroSearchPage> search(String name, int pageNumber, int pageSize, FieldMask readMask) {
+        return search(name, pageNumber, pageSize, null, readMask);
+    }
+
+    /**
+     * Searches like {@link #search(String, int, int, FieldMask)}, continuing from a page token if one is given.
+     * The page a token leads to is cut from the same result snapshot as the page that handed it out; the
+     * page number and size of the request are then ignored.
+     *
+     * @param name The name to search for
+     * @param pageNumber The page to retrieve, starting at 1
+     * @param pageSize The number of heroes per page
+     * @param pageToken The token of a previous page, or null or empty to start a new search
+     * @param readMask The hero fields to return; null or empty for whole heroes
+     * @return A future completed with the page, or exceptionally with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroSearchPage> search(String name, int pageNumber, int pageSize, String pageToken,
+                                                    FieldMask readMask) {
+        FieldMaskSlicer slicer;
+        PageToken token;
+        try {
+            slicer = compileMask(readMask);
+            token = PageToken.parse(pageToken);
+        } catch (HeroSearchException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return runSearch(name, pageNumber, pageSize, token, null, slicer);
+    }
+
+    /**
+     * Searches like {@link #search(String, int, int)} and tags the page. If the caller already holds
+     * the page, it is returned marked as not modified and without fetching its heroes. Pages with a
+     * hero that has no entity tag yet are not tagged.
+     *
+     * @param name The name to search for
+     * @param pageNumber The page to retrieve, starting at 1
+     * @param pageSize The number of heroes per page
+     * @param held Tells whether the caller already holds the page with a given tag
+     * @return A future completed with the page, or exceptionally with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroSearchPage> searchTagged(String name, int pageNumber, int pageSize, Predicate<String> held) {
+        return runSearch(name, pageNumber, pageSize, null, Objects.requireNonNull(held), null);
+    }
+
+    private CompletableFuture<HeroSearchPage> runSearch(String name, int pageNumber, int pageSize, PageToken token,
+                                                        Predicate<String> held, FieldMaskSlicer slicer) {
+        if (!rateLimiter.tryAcquire()) {
+            logger.warn("Rate limit exceeded for request: {}", name);
+            return CompletableFuture.failedFuture(new HeroSearchException(HeroSearchException.Reason.RATE_LIMITED,
+                    "Rate limit exceeded. Please try again later.", null));
+        }
+
+        CompletableFuture<HeroSearchPage> page;
+        try {
+            page = CompletableFuture
+                .supplyAsync(() -> locate(name, pageNumber, pageSize, token), executor)
+                .thenCompose(slice -> fetchPage(name, slice, held, slicer));
+        } catch (Exception e) {
+            // The executor rejected the lookup
+            page = CompletableFuture.failedFuture(e);
+        }
+        return page.exceptionally(throwable -> {
+            Throwable cause = unwrap(throwable);
+            if (cause instanceof HeroSearchException searchException) {
+                throw searchException;
+            }
+            logger.error("Error processing request", cause);
+            throw new HeroSearchException(HeroSearchException.Reason.LOOKUP_FAILED, cause.getMessage(), cause);
+        });
+    }
+
+    /**
+     * Searches for heroes by name and hands out the page as it resolves: first its position and hero IDs,
+     * then each hero as soon as it is available, cached heroes first. Cancelling the returned future stops
+     * the fetches that have not started yet and any further callbacks.
+     *
+     * @param name The name to search for
+     * @param pageNumber The page to retrieve, starting at 1
+     * @param pageSize The number of heroes per page
+     * @param onPage Called once with the page without its heroes, and the IDs of the heroes to come
+     * @param onHero Called with each found hero; never concurrently, and never before {@code onPage}
+     * @return A future completed with the full page once every hero is found or given up on, or
+     *         exceptionally with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroSearchPage> searchStream(String name, int pageNumber, int pageSize,
+                                                          BiConsumer<HeroSearchPage, List<String>> onPage,
+                                                          Consumer<Hero> onHero) {
+        return searchStream(name, pageNumber, pageSize, null, null, onPage, onHero);
+    }
+
+    /**
+     * Streams a search like {@link #searchStream(String, int, int, BiConsumer, Consumer)}, continuing from
+     * a page token if one is given and handing out only the hero fields named by a mask.
+     *
+     * @param name The name to search for
+     * @param pageNumber The page to retrieve, starting at 1
+     * @param pageSize The number of heroes per page
+     * @param pageToken The token of a previous page, or null or empty to start a new search
+     * @param readMask The hero fields to hand out; null or empty for whole heroes
+     * @param onPage Called once with the page without its heroes, and the IDs of the heroes to come
+     * @param onHero Called with each found hero; never concurrently, and never before {@code onPage}
+     * @return A future completed with the full page once every hero is found or given up on, or
+     *         exceptionally with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroSearchPage> searchStream(String name, int pageNumber, int pageSize, String pageToken,
+                                                          FieldMask readMask,
+                                                          BiConsumer<HeroSearchPage, List<String>> onPage,
+                                                          Consumer<Hero> onHero) {
+        FieldMaskSlicer slicer;
+        PageToken token;
+        try {
+            slicer = compileMask(readMask);
+            token = PageToken.parse(pageToken);
+        } catch (HeroSearchException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (!rateLimiter.tryAcquire()) {
+            logger.warn("Rate limit exceeded for request: {}", name);
+            return CompletableFuture.failedFuture(new HeroSearchException(HeroSearchException.Reason.RATE_LIMITED,
+                    "Rate limit exceeded. Please try again later.", null));
+        }
+
+        CompletableFuture<HeroSearchPage> stream = new CompletableFuture<>();
+        // Serializes the callbacks of this stream and stops them once it is cancelled
+        Object deliveryLock = new Object();
+        Consumer<Hero> deliver = hero -> {
+            synchronized (deliveryLock) {
+                if (!stream.isDone()) {
+                    onHero.accept(hero);
+                }
+            }
+        };
+        try {
+            CompletableFuture
+                .supplyAsync(() -> locate(name, pageNumber, pageSize, token), executor)
+                .thenCompose(slice -> {
+                    synchronized (deliveryLock) {
+                        if (stream.isDone()) {
+                            return CompletableFuture.<HeroSearchPage>completedFuture(null);
+                        }
+                        onPage.accept(new HeroSearchPage(name, List.of(), slice.currentPage(), slice.totalPages(),
+                                slice.totalCount(), null, slice.nextPageToken()), slice.ids());
+                    }
+                    Map<String, Hero> cached = heroCacheReader == null ? Map.of() : heroCacheReader.getHeroes(slice.ids(), slicer);
+                    return fetchMissing(new LinkedHashSet<>(slice.ids()), cached, deliver, stream, slicer)
+                        .thenApply(batch -> new HeroSearchPage(name, batch.getHeroes(), slice.currentPage(),
+                                slice.totalPages(), slice.totalCount(), null, slice.nextPageToken()));
+                })
+                .whenComplete((page, throwable) -> {
+                    if (throwable == null) {
+                        stream.complete(page);
+                        return;
+                    }
+                    Throwable cause = unwrap(throwable);
+                    if (cause instanceof HeroSearchException searchException) {
+                        stream.completeExceptionally(searchException);
+                        return;
+                    }
+                    if (!stream.isDone()) {
+                        logger.error("Error processing request", cause);
+                    }
+                    stream.completeExceptionally(
+                        new HeroSearchException(HeroSearchException.Reason.LOOKUP_FAILED, cause.getMessage(), cause));
+                });
+        } catch (Exception e) {
+            // The executor rejected the lookup
+            stream.completeExceptionally(
+                new HeroSearchException(HeroSearchException.Reason.LOOKUP_FAILED, e.getMessage(), e));
+        }
+        return stream;
+    }
+
+    /**
+     * Fetches heroes by ID without blocking the caller, handing them out all at once with the batch.
+     * The batch takes one rate limit permit.
+     *
+     * @param ids The hero IDs; duplicates are fetched once
+     * @return A future completed with the batch once every hero is found or given up on, or exceptionally
+     *         with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroBatch> getHeroes(Collection<String> ids) {
+        return getHeroes(ids, (FieldMask) null);
+    }
+
+    /**
+     * Fetches heroes by ID like {@link #getHeroes(Collection)}, returning only the hero fields named by a mask.
+     *
+     * @param ids The hero IDs; duplicates are fetched once
+     * @param readMask The hero fields to return; null or empty for whole heroes
+     * @return A future completed with the batch once every hero is found or given up on, or exceptionally
+     *         with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroBatch> getHeroes(Collection<String> ids, FieldMask readMask) {
+        return getHeroes(ids, readMask, hero -> { });
+    }
+
+    /**
+     * Fetches heroes by ID without blocking the caller, handing out each hero as soon as it is available.
+     * The batch takes one rate limit permit.
+     *
+     * @param ids The hero IDs; duplicates are fetched once
+     * @param onHero Called with each found hero as soon as it is available, cached heroes first; may be
+     *               called from several threads, but never concurrently for the same batch
+     * @return A future completed with the batch once every hero is found or given up on, or exceptionally
+     *         with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroBatch> getHeroes(Collection<String> ids, Consumer<Hero> onHero) {
+        return getHeroes(ids, null, onHero);
+    }
+
+    /**
+     * Fetches heroes by ID like {@link #getHeroes(Collection, Consumer)}, returning only the hero fields named by a mask.
+     * Cancelling the returned future drops the fetches that have not started yet and stops the callbacks.
+     *
+     * @param ids The hero IDs; duplicates are fetched once
+     * @param readMask The hero fields to return; null or empty for whole heroes
+     * @param onHero Called with each found hero as soon as it is available, cached heroes first
+     * @return A future completed with the batch once every hero is found or given up on, or exceptionally
+     *         with a {@link HeroSearchException}
+     */
+    public CompletableFuture<HeroBatch> getHeroes(Collection<String> ids, FieldMask readMask, Consumer<Hero> onHero) {
+        FieldMaskSlicer slicer;
+        try {
+            slicer = compileMask(readMask);
+        } catch (HeroSearchException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Set<String> uniqueIds = new LinkedHashSet<>(ids);
+        if (uniqueIds.size() > MAX_BATCH_SIZE) {
+            return CompletableFuture.failedFuture(new HeroSearchException(HeroSearchException.Reason.INVALID_REQUEST,
+                    "At most " + MAX_BATCH_SIZE + " heroes can be fetched at once", null));
+        }
+        if (!rateLimiter.tryAcquire()) {
+            logger.warn("Rate limit exceeded for batch of {} heroes", uniqueIds.size());
+            return CompletableFuture.failedFuture(new HeroSearchException(HeroSearchException.Reason.RATE_LIMITED,
+                    "Rate limit exceeded. Please try again later.", null));
+        }
+
+        CompletableFuture<HeroBatch> batch = new CompletableFuture<>();
+        // Serializes the callbacks of this batch and stops them once it is cancelled
+        Object deliveryLock = new Object();
+        Consumer<Hero> deliver = hero -> {
+            synchronized (deliveryLock) {
+                if (!batch.isDone()) {
+                    onHero.accept(hero);
+                }
+            }
+        };
+        try {
+            CompletableFuture
+                .supplyAsync(() -> heroCacheReader == null ? Map.<String, Hero>of() : heroCacheReader.getHeroes(uniqueIds, slicer), executor)
+                .thenCompose(cached -> batch.isDone()
+                    ? CompletableFuture.<HeroBatch>completedFuture(null)
+                    : fetchMissing(uniqueIds, cached, deliver, batch, slicer))
+                .whenComplete((result, throwable) -> {
+                    if (throwable == null) {
+                        batch.complete(result);
+                        return;
+                    }
+                    Throwable cause = unwrap(throwable);
+                    if (!batch.isDone()) {
+                        logger.error("Error fetching batch of heroes", cause);
+                    }
+                    batch.completeExceptionally(
+                        new HeroSearchException(HeroSearchException.Reason.LOOKUP_FAILED, cause.getMessage(), cause));
+                });
+        } catch (Exception e) {
+            // The executor rejected the lookup
+            batch.completeExceptionally(
+                new HeroSearchException(HeroSearchException.Reason.LOOKUP_FAILED, e.getMessage(), e));
+        }
+        return batch;
+    }
+
+    /**
+     * Delivers the cached heroes of a batch and fetches the others in parallel.
+     *
+     * @param ids The distinct hero IDs of the batch, in request order
+     * @param cached The heroes found in the cache
+     * @param onHero Called with each found hero
+     * @param owner Cancels the fetches that have not started yet when it completes first, or null
+     * @param slicer Prunes the fetched heroes, or null to keep them whole
+     * @return A future completed with the batch
+     */
+    private CompletableFuture<HeroBatch> fetchMissing(Set<String> ids, Map<String, Hero> cached, Consumer<Hero> onHero,
+                                                      CompletableFuture<?> owner, FieldMaskSlicer slicer) {
+        cached.values().forEach(onHero);
+
+        Map<String, CompletableFuture<Hero>> fetches = new LinkedHashMap<>();
+        for (String id : ids) {
+            if (!cached.containsKey(id)) {
+                // getHero goes through the cache and joins a fetch of the same hero already in flight
+                CompletableFuture<Hero> fetch = CompletableFuture.supplyAsync(() -> superheroInnerService.getHero(id), executor);
+                if (owner != null) {
+                    owner.whenComplete((result, throwable) -> fetch.cancel(false));
+                }
+                fetches.put(id, fetch
+                    .exceptionally(throwable -> {
+                        if (!fetch.isCancelled()) {
+                            logger.warn("Could not fetch hero {}", id, unwrap(throwable));
+                        }
+                        return null;
+                    })
+                    .thenApply(hero -> {
+                        if (hero == null) {
+                            return null;
+                        }
+                        Hero result = slicer == null ? hero : slicer.apply(hero);
+                        onHero.accept(result);
+                        return result;
+                    }));
+            }
+        }
+
+        return CompletableFuture.allOf(fetches.values().toArray(new CompletableFuture[0]))
+            .thenApply(v -> {
+                List<Hero> heroes = new ArrayList<>();
+                List<String> missingIds = new ArrayList<>();
+                for (String id : ids) {
+                    Hero hero = cached.containsKey(id) ? cached.get(id) : fetches.get(id).join();
+                    if (hero != null) {
+                        heroes.add(hero);
+                    } else {
+                        missingIds.add(id);
+                    }
+                }
+                return new HeroBatch(heroes, missingIds);
+            });
+    }
+
+    /**
+     * Finds the requested page of search results. A new search looks up and orders the matching IDs;
+     * if more pages follow, the ordered list is kept as a snapshot and the page gets a token for the next one.
+     * A page token leads straight into its snapshot.
+     *
+     * @param name The name to search for
+     * @param pageNumber The requested page number, for a new search
+     * @param pageSize The requested page size, for a new search
+     * @param token The token of a previous page, or null for a new search
+     * @return The page position and hero IDs
+     * @throws HeroSearchException If the token does not lead to a snapshot of this search
+     */
+    private PageSlice locate(String name, int pageNumber, int pageSize, PageToken token) {
+        if (token != null) {
+            List<String> ids = snapshot(name, token.version());
+            PageSlice slice = PageSlice.at(ids, token.offset(), token.pageSize());
+            return slice.end() < ids.size()
+                ? slice.withNextPageToken(new PageToken(token.version(), slice.end(), token.pageSize()).encode())
+                : slice;
+        }
+
+        List<String> ids = superheroInnerService.searchHeroIds(name).stream().sorted(ID_ORDER).toList();
+        PageSlice slice = PageSlice.of(ids, pageNumber, pageSize);
+        if (slice.end() >= ids.size()) {
+            return slice;
+        }
+        String version = snapshotVersion(name, ids);
+        snapshots.put(version, new SearchSnapshot(name.toLowerCase(), ids));
+        return slice.withNextPageToken(new PageToken(version, slice.end(), slice.pageSize()).encode());
+    }
+
+    /**
+     * Finds the snapshot a page token names. If it is no longer kept here, for instance because another
+     * instance handed out the token, it is rebuilt from a new search as long as the results did not change.
+     *
+     * @param name The name that is searched for
+     * @param version The snapshot version from the token
+     * @return The ordered hero IDs of the snapshot
+     * @throws HeroSearchException If the snapshot is gone and the results changed, or it belongs to another search
+     */
+    private List<String> snapshot(String name, String version) {
+        SearchSnapshot snapshot = snapshots.getIfPresent(version);
+        if (snapshot == null) {
+            List<String> ids = superheroInnerService.searchHeroIds(name).stream().sorted(ID_ORDER).toList();
+            if (snapshotVersion(name, ids).equals(version)) {
+                snapshot = new SearchSnapshot(name.toLowerCase(), ids);
+                snapshots.put(version, snapshot);
+            }
+        }
+        if (snapshot == null || !snapshot.query().equals(name.toLowerCase())) {
+            throw new HeroSearchException(HeroSearchException.Reason.INVALID_REQUEST,
+                    "Page token has expired or belongs to another search; start again from the first page", null);
+        }
+        return snapshot.ids();
+    }
+
+    /**
+     * Derives the version of a result snapshot from the search and its ordered hero IDs.
+     */
+    private static String snapshotVersion(String name, List<String> ids) {
+        Hasher hasher = ContentHash.newHasher().putUnencodedChars(name.toLowerCase()).putChar('\0');
+        for (String id : ids) {
+            hasher.putUnencodedChars(id).putChar('\0');
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Fetches the heroes of a page of search results: cached heroes in one bulk read,
+     * the others in parallel. Heroes that cannot be fetched are left out of the page.
+     *
+     * @param name The name that was searched for
+     * @param slice The position and hero IDs of the page
+     * @param held Tells whether the caller already holds a tag, or null to leave the page untagged
+     * @param slicer Prunes the heroes, or null to keep them whole
+     * @return A future completed with the page
+     */
+    private CompletableFuture<HeroSearchPage> fetchPage(String name, PageSlice slice, Predicate<String> held,
+                                                        FieldMaskSlicer slicer) {
+        List<String> pageIds = slice.ids();
+        int currentPage = slice.currentPage();
+        int totalPages = slice.totalPages();
+        int totalCount = slice.totalCount();
+
+        // Tags are read before the heroes, so a page may carry an older tag but is never labelled with a newer tag
+        String eTag = held == null ? null : pageETag(name, currentPage, totalPages, totalCount, pageIds);
+        if (eTag != null && held.test(eTag)) {
+            return CompletableFuture.completedFuture(
+                HeroSearchPage.notModified(name, currentPage, totalPages, totalCount, eTag));
+        }
+
+        Map<String, Hero> cached = heroCacheReader == null ? Map.of() : heroCacheReader.getHeroes(pageIds, slicer);
+        return fetchMissing(new LinkedHashSet<>(pageIds), cached, hero -> { }, null, slicer)
+            .thenApply(batch -> new HeroSearchPage(name, batch.getHeroes(), currentPage, totalPages, totalCount, eTag,
+                    slice.nextPageToken()));
+    }
+
+    /**
+     * Compiles a read mask against {@link Hero}.
+     *
+     * @param readMask The mask, or null
+     * @return The slicer, or null if the mask is null or empty
+     * @throws HeroSearchException If the mask names a field Hero does not have
+     */
+    private static FieldMaskSlicer compileMask(FieldMask readMask) {
+        if (readMask == null || readMask.getPathsCount() == 0) {
+            return null;
+        }
+        try {
+            return FieldMaskSlicer.of(Hero.getDescriptor(), readMask);
+        } catch (IllegalArgumentException e) {
+            throw new HeroSearchException(HeroSearchException.Reason.INVALID_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Position and hero IDs of a page of search results.
+     *
+     * @param end The offset just past the page in the ordered result list
+     * @param nextPageToken The token of the next page, or null if this is the last one
+     */
+    private record PageSlice(List<String> ids, int currentPage, int totalPages, int totalCount, int pageSize, int end,
+                             String nextPageToken) {
+
+        /**
+         * Cuts the requested page from the ordered IDs. A page number past the last page selects the
+         * last page; non-positive values select the defaults.
+         */
+        static PageSlice of(List<String> orderedIds, int requestedPage, int requestedSize) {
+            int pageSize = requestedSize > 0 ? requestedSize : DEFAULT_PAGE_SIZE;
+            int pageNumber = requestedPage > 0 ? requestedPage : 1;
+            int totalPages = (int) Math.ceil((double) orderedIds.size() / pageSize);
+            if (pageNumber > totalPages) {
+                pageNumber = totalPages;
+            }
+            int startIndex = pageNumber == 0 ? 0 : (pageNumber - 1) * pageSize;
+            return at(orderedIds, startIndex, pageSize);
+        }
+
+        /**
+         * Cuts the page starting at an offset from the ordered IDs, without walking the IDs before it.
+         */
+        static PageSlice at(List<String> orderedIds, int offset, int pageSize) {
+            int totalCount = orderedIds.size();
+            int startIndex = Math.min(offset, totalCount);
+            int endIndex = Math.min(startIndex + pageSize, totalCount);
+            int totalPages = (int) Math.ceil((double) totalCount / pageSize);
+            int currentPage = totalCount == 0 ? 0 : startIndex / pageSize + 1;
+            return new PageSlice(List.copyOf(orderedIds.subList(startIndex, endIndex)), currentPage, totalPages,
+                    totalCount, pageSize, endIndex, null);
+        }
+
+        PageSlice withNextPageToken(String token) {
+            return new PageSlice(ids, currentPage, totalPages, totalCount, pageSize, end, token);
+        }
+    }
+
+    /**
+     * Ordered hero IDs matching a search, kept for its page tokens.
+     *
+     * @param query The lowercase name that was searched for
+     */
+    private record SearchSnapshot(String query, List<String> ids) { }
+
+    /**
+     * Opaque continuation token: a snapshot version and the offset and size of the page it leads to.
+     */
+    private record PageToken(String version, int offset, int pageSize) {
+
+        String encode() {
+            String token = version + ':' + offset + ':' + pageSize;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @return The token, or null if none is given
+         * @throws HeroSearchException If the token is malformed
+         */
+        static PageToken parse(String token) {
+            if (token == null || token.isEmpty()) {
+                return null;
+            }
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+                if (parts.length == 3) {
+                    int offset = Integer.parseInt(parts[1]);
+                    int pageSize = Integer.parseInt(parts[2]);
+                    if (!parts[0].isEmpty() && offset >= 0 && pageSize > 0) {
+                        return new PageToken(parts[0], offset, pageSize);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // Not base64 or not numbers, rejected below
+            }
+            throw new HeroSearchException(HeroSearchException.Reason.INVALID_REQUEST, "Malformed page token", null);
+        }
+    }
+
+    /**
+     * Derives the entity tag of a page from its position and the tags of its heroes.
+     *
+     * @return The tag, or null if a hero of the page has no tag
+     */
+    private String pageETag(String name, int currentPage, int totalPages, int totalCount, List<String> pageIds) {
+        if (heroCacheReader == null) {
+            return null;
+        }
+        Map<String, String> heroETags = heroCacheReader.getHeroETags(pageIds);
+        if (heroETags.size() < pageIds.size()) {
+            return null;
+        }
+        Hasher hasher = ContentHash.newHasher()
+            .putUnencodedChars(name.toLowerCase()).putChar('\0')
+            .putInt(currentPage)
+            .putInt(totalPages)
+            .putInt(totalCount);
+        for (String heroId : pageIds) {
+            hasher.putUnencodedChars(heroId).putChar('\0').putUnencodedChars(heroETags.get(heroId));
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns the original failure of a future stage.
+     *
+     * @param throwable The failure as seen by a dependent stage
+     * @return The cause if the failure is a {@link CompletionException} wrapper, otherwise the failure itself
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+}
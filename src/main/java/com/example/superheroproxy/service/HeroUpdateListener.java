@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import com.example.superheroproxy.config.NotificationConfig;
 import com.example.superheroproxy.proto.Hero;
 import com.example.superheroproxy.proto.HeroUpdate;
 import com.example.superheroproxy.proto.UpdateType;
@@ -20,10 +21,23 @@ public class HeroUpdateListener {
     @Autowired
     private MessageStorageService messageStorageService;
 
+    @Autowired
+    private NotificationConfig notificationConfig;
+
+    /**
+     * Consumes hero updates published by any node and stores them.
+     * Every node joins its own consumer group, named after the node, so each one sees every update and
+     * a restart does not leave a group behind. A node starts from the latest offset because updates
+     * published before it started have no subscribers here.
+     * Without Kafka fan-out, the publishing node has already delivered the update to its subscribers.
+     *
+     * @param update The versioned hero update
+     */
     @KafkaListener(
         topics = "${kafka.topic.hero-updates}",
-        groupId = "hero-update-consumer-group",
-        containerFactory = "kafkaListenerContainerFactory"
+        groupId = "#{@fanoutGroupId}",
+        containerFactory = "kafkaListenerContainerFactory",
+        properties = {"auto.offset.reset=latest"}
     )
     public void listenHeroUpdates(HeroUpdate update) {
         try {
@@ -51,8 +65,10 @@ public class HeroUpdateListener {
                     logger.warn("Unknown update type: {} for hero: {}", updateType, heroId);
             }
 
-            // You can add additional processing logic here
-            // For example, updating a database, triggering other services, etc.
+            // Deliver to the subscribers connected to this node
+            if (notificationConfig.isKafkaFanout()) {
+                notificationService.deliverLocally(update);
+            }
 
         } catch (Exception e) {
             logger.error("Error processing hero update: {}", e.getMessage(), e);
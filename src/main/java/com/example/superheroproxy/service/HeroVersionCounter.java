@@ -0,0 +1,84 @@
+package com.example.superheroproxy.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.stereotype.Service;
+
+import com.example.superheroproxy.config.CacheConfig;
+
+/**
+ * Hands out hero update versions that are ordered across all nodes.
+ *
+ * With the Redis cache every hero has one counter, kept under {@code version:<entry key>} next to its
+ * cached entry and incremented atomically, so the version of a change does not depend on which node
+ * detected it or on that node's clock. Other caches are not shared between nodes, and neither are their
+ * counters; so is the Redis counter while Redis cannot be reached. A counter never returns a version at
+ * or below the caller's floor, so a lost Redis counter or a fallback version never falls behind what
+ * subscribers were already sent.
+ */
+@Service
+public class HeroVersionCounter {
+    private static final Logger logger = LoggerFactory.getLogger(HeroVersionCounter.class);
+
+    private static final String VERSION_KEY_PREFIX = "version:";
+    /** Increments the counter, lifting it above the floor first if it was lost or fell behind */
+    private static final byte[] NEXT_VERSION_SCRIPT = (
+            "local version = redis.call('INCR', KEYS[1]) "
+            + "local floor = tonumber(ARGV[1]) "
+            + "if version <= floor then "
+            + "  version = floor + 1 "
+            + "  redis.call('SET', KEYS[1], version) "
+            + "end "
+            + "return version").getBytes(StandardCharsets.UTF_8);
+
+    private final CacheManager cacheManager;
+    private final RedisConnectionFactory redisConnectionFactory;
+    /** Last version handed out per hero when Redis is not used */
+    private final Map<String, Long> localVersions = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheManager The cache manager, or null to count on this node only
+     * @param redisConnectionFactory Connections for the Redis counters, or null to count on this node only
+     */
+    public HeroVersionCounter(CacheManager cacheManager, RedisConnectionFactory redisConnectionFactory) {
+        this.cacheManager = cacheManager;
+        this.redisConnectionFactory = redisConnectionFactory;
+    }
+
+    /**
+     * Returns the next version for a hero.
+     *
+     * @param heroId The ID of the hero
+     * @param floor The latest version of the hero known to the caller, or 0
+     * @return A version greater than the floor and than any version previously returned for this hero
+     */
+    public long next(String heroId, long floor) {
+        Cache cache = cacheManager == null || redisConnectionFactory == null
+                ? null : cacheManager.getCache(CacheConfig.SUPERHERO_CACHE);
+        if (cache instanceof RedisCache redisCache) {
+            String prefix = redisCache.getCacheConfiguration().getKeyPrefixFor(redisCache.getName());
+            byte[] key = (VERSION_KEY_PREFIX + prefix + heroId).getBytes(StandardCharsets.UTF_8);
+            try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+                Long version = connection.scriptingCommands().eval(NEXT_VERSION_SCRIPT, ReturnType.INTEGER, 1,
+                        key, String.valueOf(floor).getBytes(StandardCharsets.UTF_8));
+                if (version != null) {
+                    localVersions.merge(heroId, version, Math::max);
+                    return version;
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Could not take a version for hero {} from Redis, counting locally", heroId, e);
+            }
+        }
+        return localVersions.merge(heroId, floor + 1, (last, next) -> Math.max(last + 1, next));
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.superheroproxy.service;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ordered, sharded executor for notification fan-out.
+ *
+ * Every key (hero ID) hashes to exactly one shard, and each shard is drained by a single
+ * dedicated thread, so tasks submitted for the same hero run one at a time in submission order.
+ * Producers hand tasks over through a lock-free multi-producer queue; the shard thread parks
+ * when its queue is empty and is unparked by the next submit.
+ *
+ * Each shard keeps its own depth counter so queue backlog can be observed per shard without
+ * walking the queues.
+ */
+public class NotificationDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    /** Upper bound on how long an idle shard parks before re-checking its queue */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Shard[] shards;
+    private final int queueCapacity;
+    private volatile boolean running = true;
+
+    /**
+     * Creates the dispatcher and starts one thread per shard.
+     *
+     * @param shardCount Number of single-threaded shards
+     * @param queueCapacity Maximum number of pending tasks per shard
+     * @param threadNamePrefix Prefix for the shard thread names
+     */
+    public NotificationDispatcher(int shardCount, int queueCapacity, String threadNamePrefix) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.queueCapacity = queueCapacity;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(threadNamePrefix + i);
+            shards[i].thread.start();
+        }
+    }
+
+    /**
+     * Queues a task on the shard owning the given key.
+     *
+     * @param key The ordering key, typically a hero ID
+     * @param task The task to run on the shard thread
+     * @return true if the task was queued, false if the dispatcher is stopped or the shard is full
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!running) {
+            return false;
+        }
+        Shard shard = shardFor(key);
+        if (shard.depth.incrementAndGet() > queueCapacity) {
+            shard.depth.decrementAndGet();
+            return false;
+        }
+        shard.queue.offer(task);
+        LockSupport.unpark(shard.thread);
+        return true;
+    }
+
+    /**
+     * Returns the shard index for a key.
+     *
+     * @param key The ordering key
+     * @return The index of the shard that runs tasks for this key
+     */
+    public int shardIndex(String key) {
+        return Math.floorMod(key.hashCode(), shards.length);
+    }
+
+    /**
+     * Returns the number of pending tasks per shard.
+     *
+     * @return Queue depth for each shard, indexed by shard number
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            depths[i] = shards[i].depth.get();
+        }
+        return depths;
+    }
+
+    /**
+     * Stops accepting tasks and waits for the shard threads to drain their queues.
+     *
+     * @param timeout Maximum time to wait per shard
+     * @param unit Unit of the timeout
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(unit.toMillis(timeout));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while stopping dispatcher shard {}", shard.thread.getName(), e);
+                return;
+            }
+            if (shard.thread.isAlive()) {
+                logger.warn("Dispatcher shard {} did not finish, {} tasks dropped", shard.thread.getName(), shard.depth.get());
+                shard.thread.interrupt();
+            }
+        }
+    }
+
+    private Shard shardFor(String key) {
+        return shards[shardIndex(key)];
+    }
+
+    /**
+     * A single-consumer queue and the thread that drains it.
+     */
+    private final class Shard implements Runnable {
+        final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger depth = new AtomicInteger();
+        final Thread thread;
+
+        Shard(String name) {
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                Runnable task = queue.poll();
+                if (task == null) {
+                    if (!running) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+                depth.decrementAndGet();
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("Error running notification task on {}", thread.getName(), e);
+                }
+            }
+        }
+    }
+}
@@ -1,39 +1,53 @@
 package com.example.superheroproxy.service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import javax.annotation.PreDestroy;
 
-import com.example.superheroproxy.config.AppConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.beans.factory.annotation.Value;
 
 import com.example.superheroproxy.config.NotificationConfig;
+import com.example.superheroproxy.config.PreSerializedMarshaller;
+import com.example.superheroproxy.proto.BatchOptions;
 import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.proto.HeroDelta;
 import com.example.superheroproxy.proto.HeroUpdate;
+import com.example.superheroproxy.proto.HeroUpdateBatch;
 import com.example.superheroproxy.proto.NotificationServiceGrpc;
 import com.example.superheroproxy.proto.SubscribeRequest;
+import com.example.superheroproxy.proto.SubscriptionCommand;
 import com.example.superheroproxy.proto.UpdateType;
+import com.example.superheroproxy.utils.ProtoDiff;
 
+import io.grpc.BindableService;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
 import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import net.devh.boot.grpc.server.service.GrpcService;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.FieldMask;
 import com.google.protobuf.Message;
+import com.google.protobuf.WireFormat;
 
 /**
  * A gRPC service that handles real-time notifications for hero updates.
@@ -41,41 +55,81 @@ import com.google.protobuf.Message;
  * and notifies them when changes occur.
  * 
  * The service implements several features to handle high load and ensure reliability:
- * 1. Rate limiting to prevent overwhelming the service
- * 2. Asynchronous notification processing
- * 3. Resource cleanup for inactive subscribers
+ * 1. Per-hero sliding-window rate limiting; updates over the limit are coalesced and the latest one is sent when the window reopens
+ * 2. Asynchronous notification processing on ordered shards (one thread per shard, hero IDs hash to a shard)
+ * 3. Per-subscriber liveness checks on a hashed-wheel timer; only cancelled or stuck streams are evicted
  * 4. Thread-safe subscriber management
  * 5. Configurable limits for subscribers
+ * 6. Serialize-once broadcast: each update is encoded a single time and the bytes are shared by all subscriber streams
+ * 7. Per-hero versions and opt-in field-level deltas against the version a subscriber last received
+ * 8. Global sequence numbers and an off-heap replay buffer so reconnecting clients only receive what they missed
+ * 9. Optional cross-node fan-out: updates are published to Kafka and every node delivers them to its own subscribers
+ * 10. Server-side subscription filters; subscribe_all filters are indexed by publisher and alignment
+ * 11. Optional batched delivery: updates are collected per subscriber and sent as one HeroUpdateBatch
+ * 12. Subscription groups: subscribers with the same hero IDs and filter share one group, matched once per update
+ * 13. Optional initial snapshot of the cached heroes, read in bulk and handed over to live updates without gap or duplicate
+ * 14. Subscriptions changed on an open bidirectional stream, moving the subscriber between groups without a gap
+ * 15. In-process listeners, e.g. the SSE fan-out, receiving every delivered update without a gRPC stream
  * 
  * @GrpcService annotation marks this class as a gRPC service implementation
  */
 @GrpcService
-public class NotificationService extends NotificationServiceGrpc.NotificationServiceImplBase {
+public class NotificationService implements NotificationServiceGrpc.AsyncService, BindableService {
     private static final Logger logger = LoggerFactory.getLogger(NotificationService.class);
+
+    /** Upper bounds on the batch options a client may request */
+    private static final int MAX_BATCH_DELAY_MILLIS = 1000;
+    private static final int MAX_BATCH_UPDATES = 1024;
     
     private final NotificationConfig config;
-    private final Executor asyncExecutor;
-    private final Executor fallbackExecutor;
 
-    // Thread pools for handling asynchronous operations
-    /** Scheduled executor for periodic cleanup tasks */
-    private final ScheduledExecutorService cleanupExecutor;
+    /** Sharded dispatcher that delivers updates for the same hero in order */
+    private final NotificationDispatcher dispatcher;
+
+    /** Timer driving subscriber liveness checks and periodic housekeeping */
+    private final HashedWheelTimer timer;
     
-    // Rate limiting and synchronization
-    /** Map to track notification rates per hero for rate limiting */
-    private final Map<String, AtomicInteger> notificationRates = new ConcurrentHashMap<>();
-    /** Lock for rate limiting operations to ensure thread safety */
-    private final ReentrantReadWriteLock rateLimitLock = new ReentrantReadWriteLock();
+    // Rate limiting
+    /** Sliding-window limiter per hero, bounding the notifications published for it per minute */
+    private final Map<String, SlidingWindowRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    /** Latest throttled update per hero, published once the hero's window has room again */
+    private final Map<String, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
     
     // Subscriber management
-    /** Map of hero-specific subscribers, keyed by hero ID */
-    private final Map<String, List<SubscriberInfo>> heroSubscribers = new ConcurrentHashMap<>();
-    /** List of subscribers interested in all hero updates */
-    private final List<SubscriberInfo> allSubscribers = new CopyOnWriteArrayList<>();
+    /** Groups of hero-specific subscribers, keyed by hero ID */
+    private final Map<String, List<SubscriptionGroup>> heroSubscribers = new ConcurrentHashMap<>();
+    /** Groups interested in all hero updates, indexed by the publishers and alignments their filters accept */
+    private final SubscriptionIndex<SubscriptionGroup> allSubscribers = new SubscriptionIndex<>();
+    /** Subscription groups by canonical key; see {@link SubscriptionGroup#key(Set, CompiledSubscriptionFilter)} */
+    private final Map<String, SubscriptionGroup> groups = new ConcurrentHashMap<>();
+    /** Subscribers by their call, to resolve cancellation and disconnect callbacks */
+    private final Map<ServerCallStreamObserver<?>, SubscriberInfo> subscribersByCall = new ConcurrentHashMap<>();
     /** Counter for total number of active subscribers */
     private final AtomicInteger totalSubscribers = new AtomicInteger(0);
     private volatile boolean isShuttingDown = false;
 
+    // Versioning
+    /** Source of hero versions shared by all nodes; see {@link #nextVersion(String)} */
+    private final HeroVersionCounter versionCounter;
+    /** Latest version and content per hero; an entry is only written by the shard that owns the hero */
+    private final Map<String, HeroState> heroStates = new ConcurrentHashMap<>();
+    /** Global sequence number, incremented for every update across all heroes */
+    private final AtomicLong sequence = new AtomicLong();
+    /**
+     * Identifies this node and run as the origin of {@link #sequence}. Sequences from another node, or from
+     * before a restart, mean nothing here, so a client resuming with another epoch gets a snapshot instead.
+     */
+    private final String sequenceEpoch = UUID.randomUUID().toString();
+    /** Recent encoded updates, replayed to clients resuming a subscription */
+    private final UpdateReplayBuffer replayBuffer;
+
+    /** Response marshaller that writes a pre-encoded update to every subscriber stream without re-encoding it */
+    private final PreSerializedMarshaller<HeroUpdate> updateMarshaller =
+        new PreSerializedMarshaller<>(HeroUpdate.getDefaultInstance());
+    /** Response marshaller for batches, which are assembled from the already encoded updates */
+    private final PreSerializedMarshaller<HeroUpdateBatch> batchMarshaller =
+        new PreSerializedMarshaller<>(HeroUpdateBatch.getDefaultInstance());
+
     @Autowired
     private KafkaTemplate<String, Message> kafkaTemplate;
 
@@ -84,41 +138,521 @@ public class NotificationService extends NotificationServiceGrpc.NotificationSer
 
     /**
      * Inner class to track subscriber information including last activity time.
-     * This helps in identifying and cleaning up inactive subscribers.
+     * This helps in identifying and evicting subscribers whose streams stopped making progress.
      */
     private static class SubscriberInfo {
         /** The actual gRPC stream observer for sending updates */
         final StreamObserver<HeroUpdate> observer;
-        /** Timestamp of the last activity from this subscriber */
-        final long lastActivityTime;
+        /** The underlying call, used for flow-control and cancellation state */
+        final ServerCallStreamObserver<?> call;
+        /** System.nanoTime() of the last write the stream accepted, or the last time it was seen ready */
+        private volatile long lastActivityNanos;
+        /** Pending liveness check; replaced each time the check runs */
+        private volatile HashedWheelTimer.Timeout livenessCheck;
+        /** Set once the subscriber is removed; no further writes are made */
+        private volatile boolean closed;
+        /** Whether this subscriber asked for deltas instead of full heroes */
+        final boolean deltas;
+        /** Server-side filter on the updates sent to this subscriber; replaced when a managed subscription changes it */
+        volatile CompiledSubscriptionFilter filter;
+        /** Writes several updates as one message; null if the stream only carries single updates */
+        private final Consumer<List<HeroUpdate>> batchWriter;
+        /** The group this subscriber belongs to; null while it is not registered. Changed under membershipLock */
+        private volatile SubscriptionGroup group;
+        /** Serializes joining, switching and leaving groups */
+        final Object membershipLock = new Object();
+        /** Whether sent versions are tracked: for deltas, and to drop duplicates while a managed subscription switches groups */
+        private final boolean tracksVersions;
+        /** Last version sent per hero; only tracked if tracksVersions is set */
+        final Map<String, Long> sentVersions;
+        /** Live updates held back while missed updates are replayed; null when not replaying */
+        private List<PreparedUpdate> heldUpdates;
         
-        SubscriberInfo(StreamObserver<HeroUpdate> observer) {
+        SubscriberInfo(StreamObserver<HeroUpdate> observer, ServerCallStreamObserver<?> call, boolean deltas,
+                       boolean managed, CompiledSubscriptionFilter filter, Consumer<List<HeroUpdate>> batchWriter) {
             this.observer = observer;
-            this.lastActivityTime = System.currentTimeMillis();
+            this.call = call;
+            this.lastActivityNanos = System.nanoTime();
+            this.deltas = deltas;
+            this.filter = filter;
+            this.batchWriter = batchWriter;
+            this.tracksVersions = deltas || managed;
+            this.sentVersions = tracksVersions ? new ConcurrentHashMap<>() : Map.of();
+        }
+
+        /**
+         * Writes an update to this subscriber. Different shards may deliver to the same
+         * subscriber concurrently, and a gRPC stream must not be written from two threads at once.
+         * Delta subscribers get a delta only if they hold the version it applies to, otherwise the full hero.
+         * An update reaching the subscriber through both its old and new group during a switch is sent once.
+         */
+        synchronized void send(PreparedUpdate update) {
+            if (closed) {
+                return;
+            }
+            if (tracksVersions) {
+                Long sentVersion = sentVersions.get(update.heroId);
+                if (sentVersion != null && sentVersion >= update.version) {
+                    return;
+                }
+            }
+            if (heldUpdates != null) {
+                heldUpdates.add(update);
+                return;
+            }
+            write(update);
+        }
+
+        private void write(PreparedUpdate update) {
+            if (deltas) {
+                Long sentVersion = sentVersions.get(update.heroId);
+                onNext(sentVersion == null ? update.full : update.deltaFrom(sentVersion));
+            } else {
+                onNext(update.full);
+            }
+            if (tracksVersions) {
+                sentVersions.put(update.heroId, update.version);
+            }
+        }
+
+        /**
+         * Writes a message and counts it as activity if the stream can still take more,
+         * i.e. the client is reading what it is sent.
+         */
+        private void onNext(HeroUpdate update) {
+            observer.onNext(update);
+            if (call.isReady()) {
+                touch();
+            }
+        }
+
+        /**
+         * Records that the stream made progress.
+         */
+        void touch() {
+            lastActivityNanos = System.nanoTime();
+        }
+
+        long idleNanos() {
+            return System.nanoTime() - lastActivityNanos;
+        }
+
+        /**
+         * Stops all further writes and cancels the pending liveness check.
+         *
+         * @return true if this call closed the subscriber, false if it was already closed
+         */
+        synchronized boolean close() {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            HashedWheelTimer.Timeout check = livenessCheck;
+            if (check != null) {
+                check.cancel();
+            }
+            return true;
+        }
+
+        /**
+         * Reads the flag without the monitor, so it can be checked under the membership lock
+         * while a shard holds the monitor and removes this subscriber.
+         */
+        boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Holds back live updates until {@link #replay} or {@link #snapshot} has sent what comes before them,
+         * so the client sees missed or current state and live updates in order and without a gap.
+         */
+        synchronized void holdLiveUpdates() {
+            heldUpdates = new ArrayList<>();
+        }
+
+        /**
+         * Sends the missed updates, then the live updates held back meanwhile,
+         * skipping live updates that were already part of the replay. Shards deliver independently, so a
+         * held update may have a lower sequence than a replayed one; only the replayed ones are skipped.
+         *
+         * @param missed Full updates recorded after the client's resume point, in sequence order
+         */
+        synchronized void replay(List<HeroUpdate> missed) {
+            Set<Long> replayed = new HashSet<>();
+            for (HeroUpdate update : missed) {
+                onNext(update);
+                if (tracksVersions) {
+                    sentVersions.put(update.getHeroId(), update.getVersion());
+                }
+                replayed.add(update.getSequence());
+            }
+            List<PreparedUpdate> held = heldUpdates;
+            heldUpdates = null;
+            for (PreparedUpdate update : held) {
+                if (!replayed.contains(update.sequence)) {
+                    write(update);
+                }
+            }
+        }
+
+        /**
+         * Sends the snapshot, as one message if the stream carries batches, then the live updates held back
+         * meanwhile. A held update whose hero is exactly what the snapshot already contained is skipped:
+         * the cache is written before an update is published, so the snapshot may already include it.
+         *
+         * @param snapshot SNAPSHOT updates with the cached state of the subscribed heroes
+         */
+        synchronized void snapshot(List<HeroUpdate> snapshot) {
+            if (closed) {
+                return;
+            }
+            Map<String, Hero> sentHeroes = new HashMap<>();
+            for (HeroUpdate update : snapshot) {
+                sentHeroes.put(update.getHeroId(), update.getHero());
+                if (tracksVersions && update.getVersion() > 0) {
+                    sentVersions.put(update.getHeroId(), update.getVersion());
+                }
+            }
+            if (batchWriter != null) {
+                if (!snapshot.isEmpty()) {
+                    batchWriter.accept(snapshot);
+                }
+            } else {
+                snapshot.forEach(this::onNext);
+            }
+
+            List<PreparedUpdate> held = heldUpdates;
+            heldUpdates = null;
+            for (PreparedUpdate update : held) {
+                HeroUpdate full = update.full;
+                if (full.getUpdateType() != UpdateType.DELETED && full.getHero().equals(sentHeroes.get(update.heroId))) {
+                    if (tracksVersions) {
+                        sentVersions.put(update.heroId, update.version);
+                    }
+                    continue;
+                }
+                write(update);
+            }
+        }
+    }
+
+    /**
+     * The latest update held back by the rate limiter for a hero. Later updates replace its content,
+     * so subscribers skip intermediate states but always end up with the final one.
+     */
+    private static final class PendingUpdate {
+        final Hero hero;
+        final UpdateType updateType;
+
+        PendingUpdate(Hero hero, UpdateType updateType) {
+            this.hero = hero;
+            this.updateType = updateType;
+        }
+
+        /**
+         * Replaces the held content with a newer update. A hero that subscribers have not seen yet
+         * stays NEW when it is updated again before being sent.
+         */
+        PendingUpdate coalesce(Hero newer, UpdateType newerType) {
+            UpdateType type = updateType == UpdateType.NEW && newerType == UpdateType.UPDATED ? UpdateType.NEW : newerType;
+            return new PendingUpdate(newer, type);
+        }
+    }
+
+    /**
+     * Subscribers that asked for the same hero IDs with the same filter. Filter matching runs once per group
+     * and update, and every member is sent the same prepared update, so dispatch cost grows with the number
+     * of distinct subscriptions rather than the number of connections.
+     */
+    private static final class SubscriptionGroup {
+        final String key;
+        /** Hero IDs of the group; empty for subscribe_all groups */
+        final Set<String> heroIds;
+        final CompiledSubscriptionFilter filter;
+        final List<SubscriberInfo> members = new CopyOnWriteArrayList<>();
+
+        SubscriptionGroup(String key, Set<String> heroIds, CompiledSubscriptionFilter filter) {
+            this.key = key;
+            this.heroIds = heroIds;
+            this.filter = filter;
+        }
+
+        /**
+         * Returns the canonical key of a subscription: the sorted hero IDs, or "*" for all heroes,
+         * and the canonical form of the filter.
+         */
+        static String key(Set<String> heroIds, CompiledSubscriptionFilter filter) {
+            String heroes = heroIds.isEmpty() ? "*" : String.join(",", new TreeSet<>(heroIds));
+            return heroes + "|" + filter.canonicalKey();
+        }
+
+        /**
+         * @return The number of registrations this group counts towards the subscriber totals
+         */
+        int registrations() {
+            return heroIds.isEmpty() ? 1 : heroIds.size();
+        }
+    }
+
+    /**
+     * Collects the updates for one batched subscriber and sends them as a single {@link HeroUpdateBatch}
+     * when the batch is full or its first update has waited the maximum delay. The batch bytes are the
+     * already encoded updates behind their field tags, so nothing is encoded twice.
+     */
+    private final class BatchingObserver implements StreamObserver<HeroUpdate> {
+        private final ServerCallStreamObserver<HeroUpdateBatch> call;
+        private final int maxUpdates;
+        private final long maxDelayMillis;
+        private List<HeroUpdate> pending = new ArrayList<>();
+        private HashedWheelTimer.Timeout flushTimeout;
+        /** Set once the stream has been completed or failed; nothing is written after that */
+        private boolean terminated;
+
+        BatchingObserver(ServerCallStreamObserver<HeroUpdateBatch> call, int maxUpdates, long maxDelayMillis) {
+            this.call = call;
+            this.maxUpdates = maxUpdates;
+            this.maxDelayMillis = maxDelayMillis;
+        }
+
+        @Override
+        public void onNext(HeroUpdate update) {
+            boolean sent;
+            synchronized (this) {
+                if (terminated) {
+                    return;
+                }
+                pending.add(update);
+                if (pending.size() < maxUpdates) {
+                    if (pending.size() == 1 && !isShuttingDown) {
+                        flushTimeout = timer.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+                    }
+                    return;
+                }
+                sent = sendPending();
+            }
+            if (!sent) {
+                removeSubscriber(call);
+            }
+        }
+
+        /**
+         * Sends the given updates as one batch, together with anything already collected.
+         *
+         * @param updates The updates to send
+         */
+        void sendBatch(List<HeroUpdate> updates) {
+            boolean sent;
+            synchronized (this) {
+                if (terminated) {
+                    return;
+                }
+                pending.addAll(updates);
+                sent = sendPending();
+            }
+            if (!sent) {
+                removeSubscriber(call);
+            }
+        }
+
+        /**
+         * Sends the collected updates. Runs on the shard that filled the batch or on the timer thread.
+         * A subscriber whose stream fails is removed only once this observer's lock is released: removal
+         * takes the subscriber's lock, which a shard holds while it hands this observer an update.
+         */
+        void flush() {
+            boolean sent;
+            synchronized (this) {
+                sent = sendPending();
+            }
+            if (!sent) {
+                removeSubscriber(call);
+            }
+        }
+
+        /**
+         * Writes the collected updates as one batch. Must hold this observer's lock.
+         *
+         * @return false if the stream failed and the subscriber has to be removed
+         */
+        private boolean sendPending() {
+            if (flushTimeout != null) {
+                flushTimeout.cancel();
+                flushTimeout = null;
+            }
+            if (pending.isEmpty()) {
+                return true;
+            }
+            List<HeroUpdate> updates = pending;
+            pending = new ArrayList<>();
+            if (terminated || call.isCancelled()) {
+                return true;
+            }
+            try {
+                call.onNext(encodeBatch(updates));
+                return true;
+            } catch (Exception e) {
+                logger.error("Error sending update batch to subscriber", e);
+                return false;
+            }
+        }
+
+        /**
+         * Sends what is collected and fails the stream, under the same lock as every batch, so a
+         * timed flush cannot write after the stream has ended. The caller has removed the subscriber.
+         */
+        @Override
+        public synchronized void onError(Throwable t) {
+            if (terminated) {
+                return;
+            }
+            sendPending();
+            terminated = true;
+            call.onError(t);
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            if (terminated) {
+                return;
+            }
+            sendPending();
+            terminated = true;
+            call.onCompleted();
         }
     }
 
+    /**
+     * Version and content of the most recent update for a hero.
+     */
+    private static final class HeroState {
+        final long version;
+        final Hero hero;
+        final boolean deleted;
+
+        HeroState(long version, Hero hero, boolean deleted) {
+            this.version = version;
+            this.hero = hero;
+            this.deleted = deleted;
+        }
+
+        /**
+         * Tells whether an update carries the same change as this state, as when several nodes detect
+         * one change and each publishes it under its own version.
+         */
+        boolean sameChangeAs(HeroUpdate update) {
+            return deleted == (update.getUpdateType() == UpdateType.DELETED) && hero.equals(update.getHero());
+        }
+    }
+
+    /**
+     * An update ready for fan-out: the full versioned message and, when the hero had a previous
+     * version, a delta against it. Both are built and encoded once, when the update is prepared.
+     * Instances are immutable: the shard delivers them to live subscribers while subscribing threads
+     * send the held ones.
+     */
+    private final class PreparedUpdate {
+        final String heroId;
+        final long version;
+        final long sequence;
+        final HeroUpdate full;
+        /** The version the delta applies to; meaningless without a delta */
+        private final long baseVersion;
+        /** Changes against {@code baseVersion}, or null if the update can only be sent whole */
+        private final HeroUpdate delta;
+
+        PreparedUpdate(HeroUpdate full, HeroState previous) {
+            this.heroId = full.getHeroId();
+            this.version = full.getVersion();
+            this.sequence = full.getSequence();
+            this.full = full;
+            if (previous == null || full.getUpdateType() == UpdateType.DELETED) {
+                this.baseVersion = 0;
+                this.delta = null;
+                return;
+            }
+            this.baseVersion = previous.version;
+            Hero hero = full.getHero();
+            FieldMask changedFields = ProtoDiff.changedFields(previous.hero, hero);
+            Hero.Builder changes = Hero.newBuilder().setId(hero.getId());
+            ProtoDiff.copyFields(changedFields, hero, changes);
+
+            this.delta = HeroUpdate.newBuilder()
+                    .setHeroId(heroId)
+                    .setUpdateType(full.getUpdateType())
+                    .setVersion(version)
+                    .setSequence(sequence)
+                    .setSequenceEpoch(full.getSequenceEpoch())
+                    .setDelta(HeroDelta.newBuilder()
+                            .setBaseVersion(previous.version)
+                            .setChangedFields(changedFields)
+                            .setChanges(changes))
+                    .build();
+            updateMarshaller.preSerialize(delta);
+        }
+
+        /**
+         * Returns the message for a subscriber that last received the given version of this hero.
+         *
+         * @param sentVersion The version the subscriber holds
+         * @return The delta if it applies to that version, otherwise the full update
+         */
+        HeroUpdate deltaFrom(long sentVersion) {
+            return delta != null && baseVersion == sentVersion ? delta : full;
+        }
+    }
+
+    /** In-process listeners called on the hero's shard with every update delivered on this node */
+    private final List<Consumer<HeroUpdate>> localListeners = new CopyOnWriteArrayList<>();
+
+    /** Bulk reader for the cached heroes sent as initial snapshots; null if snapshots are unavailable */
+    private final HeroCacheReader heroCacheReader;
+    /** Length of the per-hero rate limit window; one minute outside of tests */
+    private final long rateLimitWindowNanos;
+
+    public NotificationService(NotificationConfig config) {
+        this(config, null);
+    }
+
+    public NotificationService(NotificationConfig config, HeroCacheReader heroCacheReader) {
+        this(config, heroCacheReader, new HeroVersionCounter(null, null));
+    }
+
     @Autowired
-    public NotificationService(NotificationConfig config, AppConfig asyncConfigurer) {
+    public NotificationService(NotificationConfig config, HeroCacheReader heroCacheReader, HeroVersionCounter versionCounter) {
+        this(config, heroCacheReader, versionCounter, TimeUnit.MINUTES.toNanos(1));
+    }
+
+    /**
+     * @param config The notification configuration
+     * @param heroCacheReader Bulk reader for initial snapshots, or null if snapshots are unavailable
+     * @param versionCounter Source of the versions of published updates
+     * @param rateLimitWindowNanos Window over which each hero may send {@code rateLimitPerMinute} updates
+     */
+    NotificationService(NotificationConfig config, HeroCacheReader heroCacheReader, HeroVersionCounter versionCounter,
+                        long rateLimitWindowNanos) {
         this.config = config;
-        this.asyncExecutor = asyncConfigurer.getAsyncExecutor();
-        // Create a fallback executor with a larger queue size
-        this.fallbackExecutor = Executors.newFixedThreadPool(
-            config.getNotificationThreadPoolSize(),
-            r -> {
-                Thread t = new Thread(r);
-                t.setName("Notification-Fallback-" + t.getId());
-                return t;
-            }
-        );
-        this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
-        
-        cleanupExecutor.scheduleAtFixedRate(
-            this::cleanupInactiveSubscribers,
-            config.getCleanupIntervalMinutes(),
-            config.getCleanupIntervalMinutes(),
-            TimeUnit.MINUTES
+        this.heroCacheReader = heroCacheReader;
+        this.versionCounter = versionCounter;
+        this.rateLimitWindowNanos = rateLimitWindowNanos;
+        this.dispatcher = new NotificationDispatcher(
+            config.getDispatcherShards(),
+            config.getDispatcherQueueCapacity(),
+            "Notification-Shard-"
         );
+        this.replayBuffer = new UpdateReplayBuffer(config.getReplayBufferSlots(), config.getReplayBufferSlotBytes());
+        this.timer = new HashedWheelTimer(config.getTimerTickMillis(), TimeUnit.MILLISECONDS, config.getTimerWheelSize(), "Notification-Timer");
+        scheduleRateLimiterPruning();
+    }
+
+    /**
+     * Binds the generated service definition with the shared-bytes marshaller for HeroUpdate responses,
+     * so an update broadcast to N subscribers costs one protobuf encoding instead of N.
+     *
+     * @return The service definition registered with the gRPC server
+     */
+    @Override
+    public ServerServiceDefinition bindService() {
+        return batchMarshaller.rebind(updateMarshaller.rebind(NotificationServiceGrpc.bindService(this)));
     }
 
     /**
@@ -131,22 +665,177 @@ public class NotificationService extends NotificationServiceGrpc.NotificationSer
      */
     @Override
     public void subscribeToUpdates(SubscribeRequest request, StreamObserver<HeroUpdate> responseObserver) {
+        // Cast to ServerCallStreamObserver to handle cancellation
+        ServerCallStreamObserver<HeroUpdate> serverCallStreamObserver = 
+            (ServerCallStreamObserver<HeroUpdate>) responseObserver;
+        subscribe(request, serverCallStreamObserver, responseObserver, null);
+    }
+
+    /**
+     * Handles client subscription requests for batched hero updates.
+     * Behaves like {@link #subscribeToUpdates} but collects the updates for this subscriber and sends them
+     * as one message per batch, trading up to the batch delay in latency for far fewer messages.
+     *
+     * @param request The subscription request; its batch options override the configured defaults
+     * @param responseObserver The stream observer for sending batches back to the client
+     */
+    @Override
+    public void subscribeToBatchedUpdates(SubscribeRequest request, StreamObserver<HeroUpdateBatch> responseObserver) {
+        ServerCallStreamObserver<HeroUpdateBatch> serverCallStreamObserver =
+            (ServerCallStreamObserver<HeroUpdateBatch>) responseObserver;
+
+        BatchOptions options = request.getBatch();
+        int maxUpdates = options.getMaxUpdates() > 0
+            ? Math.min(options.getMaxUpdates(), MAX_BATCH_UPDATES)
+            : config.getBatchMaxUpdates();
+        long maxDelayMillis = options.getMaxDelayMs() > 0
+            ? Math.min(options.getMaxDelayMs(), MAX_BATCH_DELAY_MILLIS)
+            : config.getBatchMaxDelayMillis();
+
+        BatchingObserver batchingObserver = new BatchingObserver(serverCallStreamObserver, maxUpdates, maxDelayMillis);
+        subscribe(request, serverCallStreamObserver, batchingObserver, batchingObserver::sendBatch);
+    }
+
+    /**
+     * Handles a subscription the client changes on the open stream instead of reconnecting.
+     * The stream starts subscribed to nothing; each command adds or removes heroes, switches to or from
+     * all heroes, or replaces the filter, and is applied to the subscriber registry as a whole.
+     * Updates are always sent as full heroes.
+     *
+     * @param responseObserver The stream observer for sending updates back to the client
+     * @return The observer receiving the client's commands
+     */
+    @Override
+    public StreamObserver<SubscriptionCommand> manageSubscription(StreamObserver<HeroUpdate> responseObserver) {
+        ServerCallStreamObserver<HeroUpdate> serverCallStreamObserver =
+            (ServerCallStreamObserver<HeroUpdate>) responseObserver;
+
+        SubscriberInfo subscriberInfo = newSubscriber(serverCallStreamObserver, responseObserver,
+            false, true, CompiledSubscriptionFilter.MATCH_ALL, null);
+        if (totalSubscribers.get() >= config.getMaxTotalSubscribers()) {
+            // A closed subscriber ignores every command
+            subscriberInfo.close();
+            serverCallStreamObserver.onError(new RuntimeException("Maximum number of subscribers reached"));
+        } else {
+            subscribersByCall.put(serverCallStreamObserver, subscriberInfo);
+            scheduleLivenessCheck(subscriberInfo, TimeUnit.MINUTES.toNanos(config.getSubscriberTimeoutMinutes()));
+        }
+
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(SubscriptionCommand command) {
+                try {
+                    applyCommand(subscriberInfo, command);
+                } catch (IllegalArgumentException e) {
+                    removeSubscriber(subscriberInfo);
+                    serverCallStreamObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.info("Client closed the managed subscription with error: {}", t.getMessage());
+                removeSubscriber(subscriberInfo);
+            }
+
+            @Override
+            public void onCompleted() {
+                logger.info("Client completed the managed subscription");
+                removeSubscriber(subscriberInfo);
+                if (!serverCallStreamObserver.isCancelled()) {
+                    serverCallStreamObserver.onCompleted();
+                }
+            }
+        };
+    }
+
+    /**
+     * Registers a subscriber for either streaming RPC.
+     *
+     * @param request The subscription request
+     * @param serverCallStreamObserver The underlying call, for cancellation and flow control
+     * @param responseObserver Where updates for this subscriber are written
+     * @param batchWriter Writes several updates as one message, or null if the stream only carries single updates
+     */
+    private void subscribe(SubscribeRequest request, ServerCallStreamObserver<?> serverCallStreamObserver,
+                           StreamObserver<HeroUpdate> responseObserver, Consumer<List<HeroUpdate>> batchWriter) {
         // Check if maximum total subscribers limit is reached
         if (totalSubscribers.get() >= config.getMaxTotalSubscribers()) {
-            responseObserver.onError(new RuntimeException("Maximum number of subscribers reached"));
+            serverCallStreamObserver.onError(new RuntimeException("Maximum number of subscribers reached"));
             return;
         }
 
         logger.info("New subscription request received: {}", request);
+
+        // Compile the filter once; every update is matched against the compiled form
+        CompiledSubscriptionFilter filter;
+        try {
+            filter = CompiledSubscriptionFilter.compile(request.getFilter());
+        } catch (IllegalArgumentException e) {
+            serverCallStreamObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+
+        SubscriberInfo subscriberInfo = newSubscriber(serverCallStreamObserver, responseObserver,
+            request.getDeltas(), false, filter, batchWriter);
+
+        // A client asking for a snapshot or resuming gets that first; live updates wait until it is sent
+        boolean snapshot = request.getInitialSnapshot();
+        boolean resuming = !snapshot && request.getResumeFrom() > 0;
+        if (resuming && !sequenceEpoch.equals(request.getResumeEpoch())) {
+            // The client last received updates from another node or an earlier run; its sequence means nothing here
+            logger.info("Resume epoch {} is not this node's, sending a snapshot instead of replaying", request.getResumeEpoch());
+            resuming = false;
+            snapshot = true;
+        }
+        if (snapshot || resuming) {
+            subscriberInfo.holdLiveUpdates();
+        }
         
-        // Cast to ServerCallStreamObserver to handle cancellation
-        ServerCallStreamObserver<HeroUpdate> serverCallStreamObserver = 
-            (ServerCallStreamObserver<HeroUpdate>) responseObserver;
-            
+        subscribersByCall.put(serverCallStreamObserver, subscriberInfo);
+        synchronized (subscriberInfo.membershipLock) {
+            if (request.getSubscribeAll()) {
+                // Add to a group interested in all heroes
+                joinGroup(subscriberInfo, Set.of());
+                logger.info("Added all subscribers: {}", subscriberInfo.observer.hashCode());
+            } else if (!request.getHeroIdsList().isEmpty()) {
+                // Add to a group for the heroes that still have room
+                Set<String> heroIds = new LinkedHashSet<>();
+                addHeroesWithRoom(heroIds, request.getHeroIdsList());
+                if (!heroIds.isEmpty()) {
+                    joinGroup(subscriberInfo, Set.copyOf(heroIds));
+                    logger.info("Added {} subscribers: {}", heroIds, subscriberInfo.observer.hashCode());
+                }
+            }
+        }
+
+        scheduleLivenessCheck(subscriberInfo, TimeUnit.MINUTES.toNanos(config.getSubscriberTimeoutMinutes()));
+
+        if (snapshot) {
+            sendSnapshot(subscriberInfo);
+        } else if (resuming) {
+            replayMissedUpdates(subscriberInfo, request);
+        }
+    }
+
+    /**
+     * Creates a subscriber for a call, removing it when the call is cancelled or its stream ends.
+     *
+     * @param serverCallStreamObserver The underlying call, for cancellation and flow control
+     * @param responseObserver Where updates for this subscriber are written
+     * @param deltas Whether the subscriber receives deltas
+     * @param managed Whether the subscription is changed on the open stream
+     * @param filter The initial filter
+     * @param batchWriter Writes several updates as one message, or null if the stream only carries single updates
+     * @return The subscriber, not yet registered
+     */
+    private SubscriberInfo newSubscriber(ServerCallStreamObserver<?> serverCallStreamObserver,
+                                         StreamObserver<HeroUpdate> responseObserver, boolean deltas, boolean managed,
+                                         CompiledSubscriptionFilter filter, Consumer<List<HeroUpdate>> batchWriter) {
         // Set up cancellation handler
         serverCallStreamObserver.setOnCancelHandler(() -> {
             logger.info("Client cancelled the stream");
-            removeSubscriber(responseObserver);
+            removeSubscriber(serverCallStreamObserver);
         });
         
         // Create a wrapper StreamObserver that handles client disconnection
@@ -161,7 +850,7 @@ public class NotificationService extends NotificationServiceGrpc.NotificationSer
             @Override
             public void onError(Throwable t) {
                 logger.error("Client disconnected with error", t);
-                removeSubscriber(responseObserver);
+                removeSubscriber(serverCallStreamObserver);
                 if (!serverCallStreamObserver.isCancelled()) {
                     responseObserver.onError(t);
                 }
@@ -170,7 +859,7 @@ public class NotificationService extends NotificationServiceGrpc.NotificationSer
             @Override
             public void onCompleted() {
                 logger.info("Client disconnected");
-                removeSubscriber(responseObserver);
+                removeSubscriber(serverCallStreamObserver);
                 if (!serverCallStreamObserver.isCancelled()) {
                     responseObserver.onCompleted();
                 }
@@ -178,37 +867,273 @@ public class NotificationService extends NotificationServiceGrpc.NotificationSer
         };
 
         // Create subscriber info with current timestamp
-        SubscriberInfo subscriberInfo = new SubscriberInfo(wrappedObserver);
-        
-        if (request.getSubscribeAll()) {
-            // Add to all subscribers list
-            allSubscribers.add(subscriberInfo);
-            totalSubscribers.incrementAndGet();
-            logger.info("Added all subscribers: {}", wrappedObserver.hashCode());
-        } else if (!request.getHeroIdsList().isEmpty()) {
-            // Add to specific hero subscriber lists
-            for (String heroId : request.getHeroIdsList()) {
-                List<SubscriberInfo> subscribers = heroSubscribers.computeIfAbsent(
-                    heroId, 
-                    k -> new CopyOnWriteArrayList<>()
-                );
-                
-                // Check per-hero subscriber limit
-                if (subscribers.size() >= config.getMaxSubscribersPerHero()) {
-                    logger.warn("Maximum subscribers reached for hero: {}", heroId);
-                    continue;
+        SubscriberInfo subscriberInfo = new SubscriberInfo(wrappedObserver, serverCallStreamObserver, deltas, managed, filter, batchWriter);
+        // A stream that becomes writable again has drained what it was sent
+        serverCallStreamObserver.setOnReadyHandler(subscriberInfo::touch);
+        return subscriberInfo;
+    }
+
+    /**
+     * Applies a command of a managed subscription. The subscriber joins the group for its new hero IDs and
+     * filter before it leaves the old one, so heroes subscribed before and after the command miss no update;
+     * an update that reaches it through both groups meanwhile is sent once. Switching back from all heroes
+     * starts from an empty hero set.
+     *
+     * @param subscriberInfo The managed subscriber
+     * @param command The change to apply
+     * @throws IllegalArgumentException if the command carries an invalid filter
+     */
+    private void applyCommand(SubscriberInfo subscriberInfo, SubscriptionCommand command) {
+        CompiledSubscriptionFilter requestedFilter = command.hasFilter()
+            ? CompiledSubscriptionFilter.compile(command.getFilter())
+            : null;
+
+        synchronized (subscriberInfo.membershipLock) {
+            if (subscriberInfo.isClosed()) {
+                return;
+            }
+            SubscriptionGroup current = subscriberInfo.group;
+            boolean wasAll = current != null && current.heroIds.isEmpty();
+            boolean subscribeAll = command.hasSubscribeAll() ? command.getSubscribeAll() : wasAll;
+            CompiledSubscriptionFilter filter = requestedFilter != null ? requestedFilter
+                : command.getClearFilter() ? CompiledSubscriptionFilter.MATCH_ALL
+                : subscriberInfo.filter;
+
+            Set<String> heroIds = new LinkedHashSet<>();
+            if (!subscribeAll) {
+                if (current != null && !wasAll) {
+                    heroIds.addAll(current.heroIds);
+                }
+                command.getRemoveHeroIdsList().forEach(heroIds::remove);
+                addHeroesWithRoom(heroIds, command.getAddHeroIdsList());
+            }
+
+            subscriberInfo.filter = filter;
+            if (subscribeAll || !heroIds.isEmpty()) {
+                Set<String> groupHeroIds = Set.copyOf(heroIds);
+                if (current != null && current.key.equals(SubscriptionGroup.key(groupHeroIds, filter))) {
+                    return;
+                }
+                joinGroup(subscriberInfo, groupHeroIds);
+            } else {
+                subscriberInfo.group = null;
+            }
+            if (current != null) {
+                leaveGroup(subscriberInfo, current);
+            }
+            logger.info("Managed subscription now covers {}: {}",
+                subscribeAll ? "all heroes" : heroIds, subscriberInfo.observer.hashCode());
+        }
+    }
+
+    /**
+     * Adds the requested hero IDs that are not yet in the set and whose per-hero subscriber limit still has room.
+     *
+     * @param heroIds The set to add to
+     * @param requested The requested hero IDs
+     */
+    private void addHeroesWithRoom(Set<String> heroIds, List<String> requested) {
+        for (String heroId : requested) {
+            if (heroIds.contains(heroId)) {
+                continue;
+            }
+            // Check per-hero subscriber limit
+            if (countHeroSubscribers(heroId) >= config.getMaxSubscribersPerHero()) {
+                logger.warn("Maximum subscribers reached for hero: {}", heroId);
+                continue;
+            }
+            heroIds.add(heroId);
+        }
+    }
+
+    /**
+     * Adds a subscriber to the group for its hero IDs and filter, creating and registering the group
+     * if it is the first member. Called under the subscriber's membership lock.
+     *
+     * @param subscriberInfo The subscriber
+     * @param heroIds The hero IDs it subscribed to, empty for all heroes
+     */
+    private void joinGroup(SubscriberInfo subscriberInfo, Set<String> heroIds) {
+        // A subscriber removed before taking the lock must not be registered again
+        if (subscriberInfo.isClosed()) {
+            return;
+        }
+        String key = SubscriptionGroup.key(heroIds, subscriberInfo.filter);
+        groups.compute(key, (k, group) -> {
+            if (group == null) {
+                group = new SubscriptionGroup(k, heroIds, subscriberInfo.filter);
+                if (heroIds.isEmpty()) {
+                    allSubscribers.add(group, group.filter);
+                } else {
+                    for (String heroId : heroIds) {
+                        heroSubscribers.computeIfAbsent(heroId, id -> new CopyOnWriteArrayList<>()).add(group);
+                    }
                 }
-                
-                subscribers.add(subscriberInfo);
-                totalSubscribers.incrementAndGet();
-                logger.info("Added {} subscribers: {}", heroId, wrappedObserver.hashCode());
             }
+            group.members.add(subscriberInfo);
+            subscriberInfo.group = group;
+            return group;
+        });
+        totalSubscribers.addAndGet(subscriberInfo.group.registrations());
+    }
+
+    /**
+     * Removes a subscriber from its group and unregisters the group when it becomes empty.
+     *
+     * @param subscriberInfo The subscriber
+     * @param group The group it belongs to
+     */
+    private void leaveGroup(SubscriberInfo subscriberInfo, SubscriptionGroup group) {
+        groups.computeIfPresent(group.key, (k, current) -> {
+            current.members.remove(subscriberInfo);
+            if (!current.members.isEmpty()) {
+                return current;
+            }
+            if (current.heroIds.isEmpty()) {
+                allSubscribers.remove(current, current.filter);
+            } else {
+                for (String heroId : current.heroIds) {
+                    heroSubscribers.computeIfPresent(heroId, (id, heroGroups) -> {
+                        heroGroups.remove(current);
+                        return heroGroups.isEmpty() ? null : heroGroups;
+                    });
+                }
+            }
+            return null;
+        });
+        totalSubscribers.addAndGet(-group.registrations());
+    }
+
+    private int countHeroSubscribers(String heroId) {
+        List<SubscriptionGroup> heroGroups = heroSubscribers.get(heroId);
+        return heroGroups == null ? 0 : heroGroups.stream().mapToInt(group -> group.members.size()).sum();
+    }
+
+    private void scheduleLivenessCheck(SubscriberInfo subscriberInfo, long delayNanos) {
+        if (isShuttingDown || subscriberInfo.isClosed()) {
+            return;
+        }
+        subscriberInfo.livenessCheck = timer.schedule(() -> checkLiveness(subscriberInfo), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs on the timer when a subscriber's timeout comes due. Activity is recorded without touching
+     * the timer, so the check is rescheduled lazily for the remaining idle time instead of on every write.
+     * A stream that is ready for more data is healthy even if it had nothing to receive, and counts as a
+     * keepalive; only streams that were cancelled, or stayed unable to take data for the whole timeout, are evicted.
+     *
+     * @param subscriberInfo The subscriber to check
+     */
+    private void checkLiveness(SubscriberInfo subscriberInfo) {
+        if (subscriberInfo.isClosed()) {
+            return;
+        }
+        if (subscriberInfo.call.isCancelled()) {
+            removeSubscriber(subscriberInfo);
+            return;
+        }
+        if (subscriberInfo.call.isReady()) {
+            subscriberInfo.touch();
+        }
+
+        long timeoutNanos = TimeUnit.MINUTES.toNanos(config.getSubscriberTimeoutMinutes());
+        long idleNanos = subscriberInfo.idleNanos();
+        if (idleNanos < timeoutNanos) {
+            scheduleLivenessCheck(subscriberInfo, timeoutNanos - idleNanos);
+            return;
+        }
+
+        logger.warn("Evicting subscriber {}: stream has not accepted data for {} minutes",
+            subscriberInfo.observer.hashCode(), TimeUnit.NANOSECONDS.toMinutes(idleNanos));
+        removeSubscriber(subscriberInfo);
+        try {
+            subscriberInfo.call.onError(Status.DEADLINE_EXCEEDED
+                .withDescription("Subscriber stopped reading updates")
+                .asRuntimeException());
+        } catch (Exception e) {
+            logger.debug("Error closing evicted subscriber stream", e);
+        }
+    }
+
+    /**
+     * Replays the retained updates recorded after the client's resume point that match its subscription.
+     * If part of the missed range was already overwritten, only the retained part is replayed and the
+     * client sees a jump in sequence numbers.
+     *
+     * @param subscriberInfo The resuming subscriber, holding back live updates
+     * @param request The subscription request carrying resume_from
+     */
+    private void replayMissedUpdates(SubscriberInfo subscriberInfo, SubscribeRequest request) {
+        long resumeFrom = request.getResumeFrom();
+        long oldestRetained = replayBuffer.getOldestSequence();
+        if (resumeFrom + 1 < oldestRetained) {
+            logger.warn("Updates {} to {} are no longer retained, replaying from {}", resumeFrom + 1, oldestRetained - 1, oldestRetained);
+        }
+
+        Set<String> heroIds = Set.copyOf(request.getHeroIdsList());
+        List<HeroUpdate> missed = replayBuffer.readAfter(resumeFrom).stream()
+                .map(updateMarshaller::parseEncoded)
+                .filter(update -> request.getSubscribeAll() || heroIds.contains(update.getHeroId()))
+                .filter(subscriberInfo.filter::matches)
+                .toList();
+
+        try {
+            subscriberInfo.replay(missed);
+            logger.info("Replayed {} missed updates after sequence {}", missed.size(), resumeFrom);
+        } catch (Exception e) {
+            logger.error("Error replaying updates to subscriber", e);
+            removeSubscriber(subscriberInfo);
+        }
+    }
+
+    /**
+     * Reads the cached state of the subscriber's heroes in one bulk read and sends it as SNAPSHOT updates.
+     * The updates carry the current global sequence, so the client can later resume from the snapshot.
+     *
+     * @param subscriberInfo The registered subscriber, holding back live updates
+     */
+    private void sendSnapshot(SubscriberInfo subscriberInfo) {
+        SubscriptionGroup group = subscriberInfo.group;
+        List<HeroUpdate> snapshot = new ArrayList<>();
+        try {
+            if (group != null && heroCacheReader != null) {
+                long snapshotSequence = sequence.get();
+                Map<String, Hero> cached = group.heroIds.isEmpty()
+                    ? heroCacheReader.getAllHeroes()
+                    : heroCacheReader.getHeroes(group.heroIds);
+                cached.forEach((heroId, hero) -> {
+                    if (!subscriberInfo.filter.matchesHero(hero)) {
+                        return;
+                    }
+                    HeroState state = heroStates.get(heroId);
+                    snapshot.add(HeroUpdate.newBuilder()
+                        .setHeroId(heroId)
+                        .setHero(hero)
+                        .setUpdateType(UpdateType.SNAPSHOT)
+                        .setVersion(state != null && state.hero.equals(hero) ? state.version : 0)
+                        .setSequence(snapshotSequence)
+                        .setSequenceEpoch(sequenceEpoch)
+                        .build());
+                });
+            }
+        } catch (Exception e) {
+            logger.error("Error reading snapshot for subscriber, continuing with live updates", e);
+        }
+
+        try {
+            subscriberInfo.snapshot(snapshot);
+            logger.info("Sent snapshot of {} heroes", snapshot.size());
+        } catch (Exception e) {
+            logger.error("Error sending snapshot to subscriber", e);
+            removeSubscriber(subscriberInfo);
         }
     }
 
     /**
      * Notifies subscribers about a hero update.
-     * Implements rate limiting and processes notifications asynchronously.
+     * Implements rate limiting and assigns the hero's next version. With Kafka fan-out enabled the update is
+     * published to the hero-updates topic and every node, this one included, delivers it to its own subscribers
+     * from its listener; otherwise it is delivered to this node's subscribers directly.
      * 
      * @param heroId The ID of the hero that was updated
      * @param hero The updated hero object
@@ -221,75 +1146,229 @@ public class NotificationService extends NotificationServiceGrpc.NotificationSer
             return;
         }
 
-        // Check rate limit before processing
-        if (!checkRateLimit(heroId)) {
-            logger.warn("Rate limit exceeded for hero: {}", heroId);
+        // Admit the update or hold it as the hero's latest. While an update is held, newer ones
+        // replace it rather than overtaking it, so the final state is always the one published last.
+        HeroUpdate[] admitted = new HeroUpdate[1];
+        pendingUpdates.compute(heroId, (id, pending) -> {
+            if (pending == null && rateLimiterFor(id).tryAcquire()) {
+                admitted[0] = versionedUpdate(id, hero, updateType);
+                return null;
+            }
+            if (pending == null) {
+                scheduleFlush(id);
+                return new PendingUpdate(hero, updateType);
+            }
+            return pending.coalesce(hero, updateType);
+        });
+
+        if (admitted[0] == null) {
+            logger.debug("Rate limit reached for hero: {}, holding latest update", heroId);
             return;
         }
-
         logger.debug("Notifying subscribers about {} update for hero ID: {}", updateType, heroId);
-        
-        // Build the update message
-        HeroUpdate update = HeroUpdate.newBuilder()
+        publish(admitted[0]);
+    }
+
+    /**
+     * Builds the update with the hero's next version. Called while holding the hero's entry in
+     * {@link #pendingUpdates}, so versions follow the order in which updates are admitted.
+     */
+    private HeroUpdate versionedUpdate(String heroId, Hero hero, UpdateType updateType) {
+        return HeroUpdate.newBuilder()
                 .setHeroId(heroId)
                 .setHero(hero)
                 .setUpdateType(updateType)
+                .setVersion(nextVersion(heroId))
                 .build();
+    }
 
-        // Process notifications asynchronously with fallback
-        try {
-            asyncExecutor.execute(() -> {
-                try {
-                    CompletableFuture<Void> specificSubscribersFuture = CompletableFuture.runAsync(() -> 
-                        notifySpecificSubscribers(heroId, update), asyncExecutor);
-                    
-                    CompletableFuture<Void> allSubscribersFuture = CompletableFuture.runAsync(() -> 
-                        notifyAllSubscribers(update), asyncExecutor);
-                    
-                    // Wait for both notification tasks to complete
-                    CompletableFuture.allOf(specificSubscribersFuture, allSubscribersFuture).join();
-                } catch (Exception e) {
-                    logger.error("Error processing notifications", e);
-                }
-            });
-        } catch (RejectedExecutionException e) {
-            logger.warn("Primary executor rejected task, falling back to secondary executor for hero: {}", heroId);
-            // Fallback to secondary executor
-            fallbackExecutor.execute(() -> {
-                try {
-                    notifySpecificSubscribers(heroId, update);
-                    notifyAllSubscribers(update);
-                } catch (Exception ex) {
-                    logger.error("Error processing notifications in fallback executor", ex);
-                }
-            });
+    /**
+     * Publishes an update to the hero updates topic, which also feeds the stored messages. With Kafka fan-out
+     * the topic delivers it to the subscribers of every node; otherwise it is delivered here directly.
+     */
+    private void publish(HeroUpdate update) {
+        if (config.isKafkaFanout()) {
+            sendHeroUpdateToKafka(update, true);
+        } else {
+            deliverLocally(update);
+            sendHeroUpdateToKafka(update, false);
         }
     }
 
+    private SlidingWindowRateLimiter rateLimiterFor(String heroId) {
+        return rateLimiters.computeIfAbsent(heroId,
+            id -> new SlidingWindowRateLimiter(config.getRateLimitPerMinute(), rateLimitWindowNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Schedules publishing a hero's held update for when its window reopens.
+     * The flush runs on the hero's shard so the timer thread never waits on publishing.
+     */
+    private void scheduleFlush(String heroId) {
+        if (isShuttingDown) {
+            return;
+        }
+        long delayNanos = Math.max(1, rateLimiterFor(heroId).timeUntilAvailable(TimeUnit.NANOSECONDS));
+        timer.schedule(() -> {
+            if (!dispatcher.submit(heroId, () -> flushPending(heroId))) {
+                scheduleFlush(heroId);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Publishes a hero's held update if its window has room, otherwise waits for the window again.
+     */
+    private void flushPending(String heroId) {
+        HeroUpdate[] admitted = new HeroUpdate[1];
+        pendingUpdates.computeIfPresent(heroId, (id, pending) -> {
+            if (!rateLimiterFor(id).tryAcquire()) {
+                scheduleFlush(id);
+                return pending;
+            }
+            admitted[0] = versionedUpdate(id, pending.hero, pending.updateType);
+            return null;
+        });
+        if (admitted[0] != null) {
+            logger.debug("Publishing held {} update for hero ID: {}", admitted[0].getUpdateType(), heroId);
+            publish(admitted[0]);
+        }
+    }
+
+    /**
+     * Delivers an update to the subscribers connected to this node.
+     * Updates whose version is not newer than the last one delivered for the hero are dropped,
+     * which removes duplicates and reordering introduced on the way through Kafka. So are updates with
+     * the same content as the last one, which is how one change detected by several nodes arrives.
+     *
+     * @param update The versioned update, either published by this node or received from the cluster
+     */
+    public void deliverLocally(HeroUpdate update) {
+        if (isShuttingDown) {
+            logger.warn("Service is shutting down, ignoring update for hero: {}", update.getHeroId());
+            return;
+        }
+
+        String heroId = update.getHeroId();
+        // Deliver on the hero's shard so updates for the same hero keep their order
+        boolean queued = dispatcher.submit(heroId, () -> {
+            PreparedUpdate prepared = prepareUpdate(update);
+            if (prepared == null) {
+                return;
+            }
+            notifySpecificSubscribers(heroId, prepared);
+            notifyAllSubscribers(prepared);
+            notifyLocalListeners(prepared);
+        });
+        if (!queued) {
+            logger.warn("Notification shard {} is full, dropping update for hero: {}", dispatcher.shardIndex(heroId), heroId);
+        }
+    }
+
+    /**
+     * Registers an in-process listener for every update delivered on this node, in per-hero order.
+     * The listener runs on the hero's notification shard and must hand off any blocking work.
+     *
+     * @param listener The listener, receiving full updates
+     */
+    public void addLocalListener(Consumer<HeroUpdate> listener) {
+        localListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addLocalListener}.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeLocalListener(Consumer<HeroUpdate> listener) {
+        localListeners.remove(listener);
+    }
+
+    private void notifyLocalListeners(PreparedUpdate update) {
+        for (Consumer<HeroUpdate> listener : localListeners) {
+            try {
+                listener.accept(update.full);
+            } catch (Exception e) {
+                logger.error("Error notifying local listener", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the next version for a hero from the counter shared by all nodes, never at or below
+     * the latest version this node has seen for it.
+     *
+     * @param heroId The ID of the hero
+     * @return A version greater than any version previously returned for this hero
+     */
+    private long nextVersion(String heroId) {
+        HeroState state = heroStates.get(heroId);
+        return versionCounter.next(heroId, state == null ? 0 : state.version);
+    }
+
+    /**
+     * Assigns the next global sequence to an update, retains it for replay and records it as the hero's
+     * latest state. Sequence assignment and retention are one step across all shards. Must run on the
+     * shard owning the hero.
+     *
+     * @param received The versioned update to deliver
+     * @return The update ready for fan-out, or null if it is a duplicate or older than the hero's latest state
+     */
+    private PreparedUpdate prepareUpdate(HeroUpdate received) {
+        String heroId = received.getHeroId();
+        HeroState previous = heroStates.get(heroId);
+        if (previous != null && received.getVersion() <= previous.version) {
+            logger.debug("Dropping update version {} for hero {}, already at version {}", received.getVersion(), heroId, previous.version);
+            return null;
+        }
+        if (previous != null && previous.sameChangeAs(received)) {
+            logger.debug("Dropping update version {} for hero {}, same content as version {}", received.getVersion(), heroId, previous.version);
+            return null;
+        }
+
+        HeroUpdate update;
+        byte[] encoded;
+        boolean retained;
+        // Shards take sequences in the order they append them, so the replay buffer never has a gap
+        // that a later append fills: a replay sees every update up to the latest sequence it returns
+        synchronized (replayBuffer) {
+            update = received.toBuilder()
+                    .setSequence(sequence.incrementAndGet())
+                    .setSequenceEpoch(sequenceEpoch)
+                    .build();
+            // Encode once up front; every subscriber stream and the replay buffer reuse these bytes
+            encoded = updateMarshaller.preSerialize(update);
+            retained = replayBuffer.append(update.getSequence(), encoded);
+        }
+        if (!retained) {
+            logger.warn("Update {} for hero {} is too large to retain for replay ({} bytes)", update.getSequence(), heroId, encoded.length);
+        }
+        heroStates.put(heroId, new HeroState(update.getVersion(), update.getHero(), update.getUpdateType() == UpdateType.DELETED));
+        return new PreparedUpdate(update, previous);
+    }
+
+    /**
+     * Returns the number of updates waiting to be delivered on each dispatcher shard.
+     *
+     * @return Queue depth per shard
+     */
+    public int[] getDispatcherQueueDepths() {
+        return dispatcher.getQueueDepths();
+    }
+
     /**
      * Notifies subscribers who are specifically interested in updates for a particular hero.
+     * The filter is evaluated once per group.
      * 
      * @param heroId The ID of the hero that was updated
      * @param update The update message to send
      */
-    private void notifySpecificSubscribers(String heroId, HeroUpdate update) {
-        List<SubscriberInfo> specificSubscribers = heroSubscribers.get(heroId);
-        if (specificSubscribers != null) {
-            specificSubscribers.forEach(subscriberInfo -> {
-                try {
-                    StreamObserver<HeroUpdate> subscriber = subscriberInfo.observer;
-                    if (subscriber instanceof ServerCallStreamObserver) {
-                        if (!((ServerCallStreamObserver<HeroUpdate>) subscriber).isCancelled()) {
-                            subscriber.onNext(update);
-                        } else {
-                            logger.warn("One of specificSubscribers for {} cancelled", heroId);
-                        }
-                    } else {
-                        subscriber.onNext(update);
-                    }
-                } catch (Exception e) {
-                    logger.error("Error sending update to subscriber", e);
-                    removeSubscriber(subscriberInfo.observer);
+    private void notifySpecificSubscribers(String heroId, PreparedUpdate update) {
+        List<SubscriptionGroup> heroGroups = heroSubscribers.get(heroId);
+        if (heroGroups != null) {
+            heroGroups.forEach(group -> {
+                if (group.filter.matches(update.full)) {
+                    sendToMembers(group, update);
                 }
             });
         }
@@ -297,86 +1376,79 @@ public class NotificationService extends NotificationServiceGrpc.NotificationSer
 
     /**
      * Notifies all subscribers who are interested in updates for any hero.
+     * Only groups whose filter matches the update are visited.
      * 
      * @param update The update message to send
      */
-    private void notifyAllSubscribers(HeroUpdate update) {
-        allSubscribers.forEach(subscriberInfo -> {
+    private void notifyAllSubscribers(PreparedUpdate update) {
+        allSubscribers.forEachMatch(update.full, group -> sendToMembers(group, update));
+    }
+
+    /**
+     * Sends a prepared update to every member of a group.
+     *
+     * @param group The matching group
+     * @param update The update message to send
+     */
+    private void sendToMembers(SubscriptionGroup group, PreparedUpdate update) {
+        group.members.forEach(subscriberInfo -> {
             try {
-                StreamObserver<HeroUpdate> subscriber = subscriberInfo.observer;
-                if (subscriber instanceof ServerCallStreamObserver) {
-                    if (!((ServerCallStreamObserver<HeroUpdate>) subscriber).isCancelled()) {
-                        subscriber.onNext(update);
-                    } else {
-                        logger.warn("One of allSubscribers cancelled");
-                    }
+                if (!subscriberInfo.call.isCancelled()) {
+                    subscriberInfo.send(update);
                 } else {
-                    subscriber.onNext(update);
+                    logger.warn("One of the subscribers in group {} cancelled", group.key);
                 }
             } catch (Exception e) {
                 logger.error("Error sending update to subscriber", e);
-                removeSubscriber(subscriberInfo.observer);
+                removeSubscriber(subscriberInfo);
             }
         });
     }
 
     /**
-     * Checks if the rate limit for a hero has been exceeded.
-     * Uses a read-write lock for thread-safe rate limiting.
-     * 
-     * @param heroId The ID of the hero to check rate limit for
-     * @return true if the rate limit has not been exceeded, false otherwise
+     * Drops the limiters of heroes that have been quiet for two windows every cleanup interval.
+     * A hero with a held update keeps its limiter.
      */
-    private boolean checkRateLimit(String heroId) {
-        rateLimitLock.readLock().lock();
-        try {
-            AtomicInteger rateCounter = notificationRates.computeIfAbsent(
-                heroId, 
-                k -> new AtomicInteger(0)
-            );
-            return rateCounter.incrementAndGet() <= config.getRateLimitPerMinute();
-        } finally {
-            rateLimitLock.readLock().unlock();
+    private void scheduleRateLimiterPruning() {
+        if (isShuttingDown) {
+            return;
         }
+        timer.schedule(() -> {
+            rateLimiters.entrySet().removeIf(entry ->
+                entry.getValue().isIdle() && !pendingUpdates.containsKey(entry.getKey()));
+            scheduleRateLimiterPruning();
+        }, config.getCleanupIntervalMinutes(), TimeUnit.MINUTES);
     }
 
     /**
-     * Cleans up inactive subscribers and resets rate limit counters.
-     * Removes subscribers who haven't been active for the timeout period.
+     * Removes the subscriber on the given call, if any.
+     * 
+     * @param call The subscriber's call
      */
-    private void cleanupInactiveSubscribers() {
-        long cutoffTime = System.currentTimeMillis() - (config.getSubscriberTimeoutMinutes() * 60 * 1000);
-        
-        // Clean up all subscribers
-        allSubscribers.removeIf(subscriberInfo -> 
-            subscriberInfo.lastActivityTime < cutoffTime
-        );
-        
-        // Clean up hero-specific subscribers
-        heroSubscribers.forEach((heroId, subscribers) -> {
-            subscribers.removeIf(subscriberInfo -> 
-                subscriberInfo.lastActivityTime < cutoffTime
-            );
-            if (subscribers.isEmpty()) {
-                heroSubscribers.remove(heroId);
-            }
-        });
-        
-        // Reset rate limit counters
-        notificationRates.clear();
+    private void removeSubscriber(StreamObserver<?> call) {
+        SubscriberInfo subscriberInfo = subscribersByCall.get(call);
+        if (subscriberInfo != null) {
+            removeSubscriber(subscriberInfo);
+        }
     }
 
     /**
-     * Removes a subscriber from both specific hero and all subscribers lists.
-     * 
-     * @param subscriber The subscriber to remove
+     * Removes a subscriber from its group. Safe to call more than once.
+     *
+     * @param subscriberInfo The subscriber to remove
      */
-    private void removeSubscriber(StreamObserver<HeroUpdate> subscriber) {
-        allSubscribers.removeIf(info -> info.observer == subscriber);
-        heroSubscribers.forEach((heroId, subscribers) -> 
-            subscribers.removeIf(info -> info.observer == subscriber)
-        );
-        totalSubscribers.decrementAndGet();
+    private void removeSubscriber(SubscriberInfo subscriberInfo) {
+        if (!subscriberInfo.close()) {
+            return;
+        }
+        subscribersByCall.remove(subscriberInfo.call, subscriberInfo);
+        synchronized (subscriberInfo.membershipLock) {
+            SubscriptionGroup group = subscriberInfo.group;
+            if (group != null) {
+                subscriberInfo.group = null;
+                leaveGroup(subscriberInfo, group);
+            }
+        }
     }
 
     /**
@@ -388,48 +1460,69 @@ public class NotificationService extends NotificationServiceGrpc.NotificationSer
     public void cleanup() {
         logger.info("Cleaning up NotificationService resources");
         isShuttingDown = true;
-        cleanupExecutor.shutdown();
-        try {
-            if (!cleanupExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
-                cleanupExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            logger.error("Interrupted while shutting down NotificationService", e);
-        }
+        dispatcher.shutdown(10, TimeUnit.SECONDS);
+        timer.stop();
     }
 
     /**
-     * Sends a hero update to Kafka message queue.
-     * This method is used to publish hero updates to Kafka for asynchronous processing.
-     * 
-     * @param heroId The ID of the hero that was updated
-     * @param hero The updated hero object
-     * @param updateType The type of update that occurred
+     * Builds a batch whose encoding is each update's existing encoding behind the field tag and length,
+     * and registers those bytes so the batch is written without encoding the updates again.
+     *
+     * @param updates The updates in delivery order
+     * @return The batch, linked to its assembled encoding
      */
-    public void sendHeroUpdateToKafka(String heroId, Hero hero, UpdateType updateType) {
-        if (isShuttingDown) {
-            logger.warn("Service is shutting down, ignoring Kafka update for hero: {}", heroId);
-            return;
+    private HeroUpdateBatch encodeBatch(List<HeroUpdate> updates) throws IOException {
+        List<byte[]> parts = new ArrayList<>(updates.size());
+        int size = 0;
+        for (HeroUpdate update : updates) {
+            byte[] part = updateMarshaller.preSerialize(update);
+            parts.add(part);
+            size += CodedOutputStream.computeTagSize(HeroUpdateBatch.UPDATES_FIELD_NUMBER)
+                + CodedOutputStream.computeUInt32SizeNoTag(part.length) + part.length;
         }
 
-        try {
-            HeroUpdate update = HeroUpdate.newBuilder()
-                    .setHeroId(heroId)
-                    .setHero(hero)
-                    .setUpdateType(updateType)
-                    .build();
+        byte[] encoded = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(encoded);
+        for (byte[] part : parts) {
+            output.writeTag(HeroUpdateBatch.UPDATES_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(part.length);
+            output.writeRawBytes(part);
+        }
+        output.checkNoSpaceLeft();
 
+        HeroUpdateBatch batch = HeroUpdateBatch.newBuilder().addAllUpdates(updates).build();
+        batchMarshaller.registerEncoded(batch, encoded);
+        return batch;
+    }
+
+    /**
+     * Publishes a hero update to Kafka.
+     *
+     * @param update The versioned update to publish
+     * @param fanout Whether the topic delivers the update to subscribers, in which case it is delivered
+     *               to this node's subscribers directly if publishing fails
+     */
+    private void sendHeroUpdateToKafka(HeroUpdate update, boolean fanout) {
+        String heroId = update.getHeroId();
+        try {
             kafkaTemplate.send(heroUpdatesTopic, heroId, update)
                     .whenComplete((result, ex) -> {
                         if (ex == null) {
                             logger.debug("Successfully sent hero update to Kafka for hero: {}", heroId);
+                        } else if (fanout) {
+                            logger.error("Failed to send hero update to Kafka for hero: {}, delivering locally", heroId, ex);
+                            deliverLocally(update);
                         } else {
                             logger.error("Failed to send hero update to Kafka for hero: {}", heroId, ex);
                         }
                     });
         } catch (Exception e) {
-            logger.error("Error sending hero update to Kafka for hero: {}", heroId, e);
+            if (fanout) {
+                logger.error("Error sending hero update to Kafka for hero: {}, delivering locally", heroId, e);
+                deliverLocally(update);
+            } else {
+                logger.error("Error sending hero update to Kafka for hero: {}", heroId, e);
+            }
         }
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.example.superheroproxy.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free sliding-window rate limiter.
+ *
+ * Keeps the number of permits taken in the current fixed window and the one before it, and
+ * estimates the count over the sliding window by weighting the previous window by how much of
+ * it still overlaps. This bounds the rate over any window-sized interval without storing a
+ * timestamp per permit. State is an immutable snapshot swapped with compare-and-set, so
+ * concurrent callers never block each other.
+ */
+public class SlidingWindowRateLimiter {
+
+    private final int limit;
+    private final long windowNanos;
+    private final AtomicReference<Window> state;
+
+    /**
+     * @param limit Maximum permits per window
+     * @param window Length of the sliding window
+     * @param unit Unit of the window length
+     */
+    public SlidingWindowRateLimiter(int limit, long window, TimeUnit unit) {
+        if (limit <= 0 || window <= 0) {
+            throw new IllegalArgumentException("Limit and window must be positive");
+        }
+        this.limit = limit;
+        this.windowNanos = unit.toNanos(window);
+        this.state = new AtomicReference<>(new Window(System.nanoTime(), 0, 0));
+    }
+
+    /**
+     * Takes a permit if the sliding window has room for one.
+     *
+     * @return true if the permit was taken, false if the caller is over the limit
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    boolean tryAcquire(long now) {
+        while (true) {
+            Window current = state.get();
+            Window rolled = current.rollTo(now, windowNanos);
+            if (estimate(rolled, now) >= limit) {
+                state.compareAndSet(current, rolled);
+                return false;
+            }
+            if (state.compareAndSet(current, rolled.withPermit())) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns how long until a permit can be taken, assuming no one else takes one meanwhile.
+     *
+     * @param unit Unit of the result
+     * @return The wait time, 0 if a permit is available now
+     */
+    public long timeUntilAvailable(TimeUnit unit) {
+        return unit.convert(nanosUntilAvailable(System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    long nanosUntilAvailable(long now) {
+        Window window = state.get().rollTo(now, windowNanos);
+        if (estimate(window, now) < limit) {
+            return 0;
+        }
+        long elapsed = now - window.start;
+        if (window.current < limit && window.previous > 0) {
+            // Still in this window: wait until enough of the previous window has slid out
+            double reopensAt = windowNanos * (1 - (double) (limit - window.current) / window.previous);
+            return Math.max(1, (long) Math.ceil(reopensAt) - elapsed + 1);
+        }
+        // This window is full on its own: wait for the next one, then for enough of this one to slide out
+        double reopensAt = windowNanos * (1 - (double) limit / window.current);
+        return windowNanos - elapsed + (long) Math.ceil(reopensAt) + 1;
+    }
+
+    /**
+     * Returns whether no permit was taken in the last two windows, so the limiter holds no state worth keeping.
+     *
+     * @return true if the limiter is idle
+     */
+    public boolean isIdle() {
+        Window window = state.get().rollTo(System.nanoTime(), windowNanos);
+        return window.previous == 0 && window.current == 0;
+    }
+
+    private double estimate(Window window, long now) {
+        double previousWeight = 1 - (double) (now - window.start) / windowNanos;
+        return window.previous * previousWeight + window.current;
+    }
+
+    /**
+     * Permit counts of the fixed window starting at {@code start} and the window before it.
+     */
+    private record Window(long start, int previous, int current) {
+
+        Window rollTo(long now, long windowNanos) {
+            long elapsedWindows = (now - start) / windowNanos;
+            if (elapsedWindows <= 0) {
+                return this;
+            }
+            long newStart = start + elapsedWindows * windowNanos;
+            return new Window(newStart, elapsedWindows == 1 ? current : 0, 0);
+        }
+
+        Window withPermit() {
+            return new Window(start, previous, current + 1);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.superheroproxy.service;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.example.superheroproxy.config.NotificationConfig;
+
+/**
+ * Times the keep-alive pings of every SSE subscription without a thread per subscription.
+ *
+ * Each subscription's next ping is a timeout on one shared {@link HashedWheelTimer} with a one-second tick,
+ * so a waiting subscription costs a timer entry instead of a sleeping thread. When a ping is due, the
+ * subscription's ping action runs on the timer thread; it only queues the ping for the subscription's own
+ * writer, so a slow client never delays the pings of the others. Failed writes end the subscription through
+ * its writer, not through the scheduler.
+ */
+@Service
+public class SseHeartbeatScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(SseHeartbeatScheduler.class);
+
+    private final long intervalMillis;
+    private final HashedWheelTimer timer;
+
+    public SseHeartbeatScheduler(NotificationConfig config) {
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(config.getSseHeartbeatSeconds());
+        this.timer = new HashedWheelTimer(1, TimeUnit.SECONDS, 128, "Sse-Heartbeat-Timer");
+    }
+
+    /**
+     * Starts pinging a subscription: once on the next tick, then every heartbeat interval.
+     *
+     * @param subscriptionId The subscription ID, for logging
+     * @param ping Queues a ping for the subscription; must not block. Pings stop if it throws.
+     * @return The heartbeat, to cancel when the emitter completes
+     */
+    public Heartbeat start(String subscriptionId, Runnable ping) {
+        Heartbeat heartbeat = new Heartbeat(subscriptionId, ping);
+        heartbeat.schedule(0);
+        return heartbeat;
+    }
+
+    /**
+     * @return The number of scheduled pings, one per active subscription
+     */
+    public int scheduledHeartbeats() {
+        return timer.pendingTimeouts();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+    }
+
+    /**
+     * The pings of one SSE subscription.
+     */
+    public final class Heartbeat {
+        private final String subscriptionId;
+        private final Runnable ping;
+        private volatile boolean cancelled;
+        private volatile HashedWheelTimer.Timeout next;
+
+        private Heartbeat(String subscriptionId, Runnable ping) {
+            this.subscriptionId = subscriptionId;
+            this.ping = ping;
+        }
+
+        private void schedule(long delayMillis) {
+            if (!cancelled) {
+                next = timer.schedule(this::ping, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void ping() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                ping.run();
+                logger.debug("{} ping queued", subscriptionId);
+                schedule(intervalMillis);
+            } catch (Exception e) {
+                logger.error("{} unexpected error queuing ping, stopping pings", subscriptionId, e);
+                cancelled = true;
+            }
+        }
+
+        /**
+         * Stops the pings. Safe to call more than once.
+         */
+        public void cancel() {
+            cancelled = true;
+            HashedWheelTimer.Timeout timeout = next;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.superheroproxy.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import com.example.superheroproxy.proto.HeroUpdate;
+
+/**
+ * Subscribers with filters, indexed by the publisher and alignment they accept.
+ *
+ * A subscriber is registered under every key of its compiled filter, and an update is looked up
+ * under its own four keys (exact, publisher only, alignment only, neither). Each subscriber's keys
+ * all have the same shape, so an update reaches a subscriber through at most one key and only
+ * matching subscribers are visited; the residual predicates are then checked per subscriber.
+ *
+ * Buckets are copy-on-write: dispatch iterates without locking, subscribe and unsubscribe copy.
+ * Keys come from client-supplied filters, so a bucket is dropped as soon as its last subscriber leaves.
+ *
+ * @param <S> The subscriber type
+ */
+public class SubscriptionIndex<S> {
+
+    private final Map<String, List<Entry<S>>> buckets = new ConcurrentHashMap<>();
+    private final Set<S> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Registers a subscriber under the keys of its filter.
+     *
+     * @param subscriber The subscriber
+     * @param filter The subscriber's compiled filter
+     */
+    public void add(S subscriber, CompiledSubscriptionFilter filter) {
+        Entry<S> entry = new Entry<>(subscriber, filter);
+        subscribers.add(subscriber);
+        for (String key : filter.indexKeys()) {
+            // Added inside compute, so a concurrent remove cannot drop the bucket in between
+            buckets.compute(key, (k, entries) -> {
+                List<Entry<S>> bucket = entries != null ? entries : new CopyOnWriteArrayList<>();
+                bucket.add(entry);
+                return bucket;
+            });
+        }
+    }
+
+    /**
+     * Removes a subscriber from the keys of its filter.
+     *
+     * @param subscriber The subscriber
+     * @param filter The compiled filter it was added with
+     */
+    public void remove(S subscriber, CompiledSubscriptionFilter filter) {
+        for (String key : filter.indexKeys()) {
+            buckets.computeIfPresent(key, (k, entries) -> {
+                entries.removeIf(entry -> entry.subscriber == subscriber);
+                return entries.isEmpty() ? null : entries;
+            });
+        }
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Calls the action for every subscriber whose filter matches the update.
+     *
+     * @param update The full update
+     * @param action Called once per matching subscriber
+     */
+    public void forEachMatch(HeroUpdate update, Consumer<S> action) {
+        for (String key : CompiledSubscriptionFilter.lookupKeys(update.getHero())) {
+            List<Entry<S>> entries = buckets.get(key);
+            if (entries == null) {
+                continue;
+            }
+            for (Entry<S> entry : entries) {
+                if (entry.filter.matchesResidual(update)) {
+                    action.accept(entry.subscriber);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of registered subscribers
+     */
+    public int size() {
+        return subscribers.size();
+    }
+
+    /**
+     * @return The number of keys with at least one subscriber
+     */
+    int bucketCount() {
+        return buckets.size();
+    }
+
+    private record Entry<S>(S subscriber, CompiledSubscriptionFilter filter) {
+    }
+}
@@ -1,34 +1,36 @@
 package com.example.superheroproxy.service;
 
-import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
-
 import com.example.superheroproxy.config.AppConfig;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.example.superheroproxy.proto.GetHeroesRequest;
+import com.example.superheroproxy.proto.GetHeroesResponse;
+import com.example.superheroproxy.proto.Hero;
 import com.example.superheroproxy.proto.SearchRequest;
+import com.example.superheroproxy.proto.SearchPageInfo;
 import com.example.superheroproxy.proto.SearchResponse;
+import com.example.superheroproxy.proto.SearchStreamResponse;
 import com.example.superheroproxy.proto.SuperheroServiceGrpc;
 import com.google.common.util.concurrent.RateLimiter;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import net.devh.boot.grpc.server.service.GrpcService;
 
 /**
  * A gRPC service that acts as a proxy for superhero data operations.
  * This service provides a gRPC interface for searching and retrieving superhero information,
- * delegating the actual data operations to the SuperheroInnerService.
+ * delegating the search itself to the transport-neutral {@link HeroSearchService}.
  * 
  * The service implements the SuperheroServiceGrpc interface and handles:
- * - Search operations for heroes by name
- * - Error handling and logging
+ * - Search operations for heroes by name, as one response or as a stream
+ * - Fetching heroes by ID, as one response or as a stream
+ * - Pruning returned heroes to the fields named by a request's read mask
+ * - Mapping search failures to gRPC statuses
  * - Response streaming to clients
  * 
  * This is the main entry point for gRPC clients to interact with the superhero data system.
@@ -36,111 +38,188 @@ import net.devh.boot.grpc.server.service.GrpcService;
 @GrpcService
 public class SuperheroProxyService extends SuperheroServiceGrpc.SuperheroServiceImplBase {
 
-    private static final Logger logger = LoggerFactory.getLogger(SuperheroProxyService.class);
-    private static final int MAX_THREADS = 10; // Maximum number of concurrent getHero calls
+    private final HeroSearchService heroSearchService;
 
-    private final SuperheroInnerService superheroInnerService;
-    private final RateLimiter rateLimiter;
-    private final Executor executor;
-    private final AppConfig appConfig;
+    /**
+     * Constructs a new SuperheroProxyService on top of the shared search facade.
+     * 
+     * @param heroSearchService The service that performs hero searches
+     */
+    @Autowired
+    public SuperheroProxyService(HeroSearchService heroSearchService) {
+        this.heroSearchService = heroSearchService;
+    }
 
     /**
-     * Constructs a new SuperheroProxyService with the specified inner service and rate limiter.
+     * Constructs a new SuperheroProxyService with its own search facade over the given inner service and rate limiter.
      * 
      * @param superheroInnerService The service that handles the actual superhero data operations
      * @param rateLimiter The rate limiter for controlling the rate of requests
+     * @param appConfig The application configuration providing the async executor
      */
-    @Autowired
     public SuperheroProxyService(SuperheroInnerService superheroInnerService, RateLimiter rateLimiter, AppConfig appConfig) {
-        this.superheroInnerService = superheroInnerService;
-        this.rateLimiter = rateLimiter;
-        this.appConfig = appConfig;
-//        this.executorService = Executors.newFixedThreadPool(MAX_THREADS);
-        this.executor = appConfig.getAsyncExecutor();
+        this(new HeroSearchService(superheroInnerService, rateLimiter, appConfig));
     }
 
     /**
      * Handles search requests for heroes by name.
-     * This method:
-     * 1. Checks if we can acquire a permit within a reasonable time
-     * 2. Retrieves matching hero IDs
-     * 3. Fetches detailed hero information for each ID
-     * 4. Streams the results back to the client
+     * The search runs without blocking the calling thread; its page is streamed back as a single response.
      * 
      * @param request The search request containing the hero name to search for
      * @param responseObserver The stream observer for sending responses back to the client
      */
     @Override
     public void searchHero(SearchRequest request, StreamObserver<SearchResponse> responseObserver) {
-        try {
-            // Check if we can acquire a permit within a reasonable time
-            if (!rateLimiter.tryAcquire()) {
-                logger.warn("Rate limit exceeded for request: {}", request.getName());
-                responseObserver.onError(Status.RESOURCE_EXHAUSTED
-                    .withDescription("Rate limit exceeded. Please try again later.")
-                    .asRuntimeException());
+        heroSearchService.search(request.getName(), request.getPageNumber(), request.getPageSize(),
+                request.getPageToken(), request.getReadMask())
+            .whenComplete((page, throwable) -> {
+                if (throwable != null) {
+                    responseObserver.onError(toStatusException(HeroSearchService.unwrap(throwable)));
+                    return;
+                }
+                responseObserver.onNext(page.toSearchResponse());
+                responseObserver.onCompleted();
+            });
+    }
+
+    /**
+     * Handles streamed search requests. The page position is sent first, then each hero as soon as it
+     * comes back from the cache or the upstream, so the first results do not wait for the slowest hero.
+     * If the client cancels, the fetches that have not started yet are dropped.
+     *
+     * @param request The search request containing the hero name and page to retrieve
+     * @param responseObserver The stream observer for sending the page and heroes back to the client
+     */
+    @Override
+    public void searchHeroStream(SearchRequest request, StreamObserver<SearchStreamResponse> responseObserver) {
+        AtomicReference<CompletableFuture<HeroSearchPage>> search = new AtomicReference<>();
+        if (responseObserver instanceof ServerCallStreamObserver<SearchStreamResponse> serverObserver) {
+            serverObserver.setOnCancelHandler(() -> {
+                CompletableFuture<HeroSearchPage> running = search.get();
+                if (running != null) {
+                    running.cancel(false);
+                }
+            });
+        }
+
+        search.set(heroSearchService.searchStream(request.getName(), request.getPageNumber(), request.getPageSize(),
+            request.getPageToken(), request.getReadMask(),
+            (page, heroIds) -> {
+                SearchPageInfo.Builder info = SearchPageInfo.newBuilder()
+                    .setResultsFor(page.getQuery())
+                    .setTotalCount(page.getTotalCount())
+                    .setCurrentPage(page.getCurrentPage())
+                    .setTotalPages(page.getTotalPages())
+                    .addAllHeroIds(heroIds);
+                if (page.getNextPageToken() != null) {
+                    info.setNextPageToken(page.getNextPageToken());
+                }
+                responseObserver.onNext(SearchStreamResponse.newBuilder().setPage(info).build());
+            },
+            hero -> responseObserver.onNext(SearchStreamResponse.newBuilder().setHero(hero).build())));
+        if (isCancelled(responseObserver)) {
+            search.get().cancel(false);
+        }
+
+        search.get().whenComplete((page, throwable) -> {
+            if (isCancelled(responseObserver)) {
+                return;
+            }
+            if (throwable != null) {
+                responseObserver.onError(toStatusException(HeroSearchService.unwrap(throwable)));
                 return;
             }
+            responseObserver.onCompleted();
+        });
+    }
 
-            // Get all matching IDs first
-            Set<String> allIds = superheroInnerService.searchHeroIds(request.getName()); //count all + current page ID
-            int totalCount = allIds.size();
-            
-            // Calculate pagination
-            int pageSize = request.getPageSize() > 0 ? request.getPageSize() : 10; // Default page size
-            int pageNumber = request.getPageNumber() > 0 ? request.getPageNumber() : 1; // Default to first page
-            int totalPages = (int) Math.ceil((double) totalCount / pageSize);
-            
-            // Validate page number
-            if (pageNumber > totalPages) {
-                pageNumber = totalPages;
+    /**
+     * Handles requests for heroes by ID, answered with all found heroes at once.
+     *
+     * @param request The request containing the hero IDs
+     * @param responseObserver The stream observer for sending the response back to the client
+     */
+    @Override
+    public void getHeroes(GetHeroesRequest request, StreamObserver<GetHeroesResponse> responseObserver) {
+        heroSearchService.getHeroes(request.getIdsList(), request.getReadMask())
+            .whenComplete((batch, throwable) -> {
+                if (throwable != null) {
+                    responseObserver.onError(toStatusException(HeroSearchService.unwrap(throwable)));
+                    return;
+                }
+                responseObserver.onNext(batch.toResponse());
+                responseObserver.onCompleted();
+            });
+    }
+
+    /**
+     * Handles requests for heroes by ID, streaming each hero as soon as it is available.
+     * Cached heroes are sent first; heroes that cannot be found are left out. If the client cancels,
+     * the fetches that have not started yet are dropped.
+     *
+     * @param request The request containing the hero IDs
+     * @param responseObserver The stream observer for sending heroes back to the client
+     */
+    @Override
+    public void streamHeroes(GetHeroesRequest request, StreamObserver<Hero> responseObserver) {
+        AtomicReference<CompletableFuture<HeroBatch>> fetch = new AtomicReference<>();
+        if (responseObserver instanceof ServerCallStreamObserver<Hero> serverObserver) {
+            serverObserver.setOnCancelHandler(() -> {
+                CompletableFuture<HeroBatch> running = fetch.get();
+                if (running != null) {
+                    running.cancel(false);
+                }
+            });
+        }
+
+        fetch.set(heroSearchService.getHeroes(request.getIdsList(), request.getReadMask(), hero -> {
+            if (!isCancelled(responseObserver)) {
+                responseObserver.onNext(hero);
+            }
+        }));
+        if (isCancelled(responseObserver)) {
+            fetch.get().cancel(false);
+        }
+
+        fetch.get().whenComplete((batch, throwable) -> {
+            if (isCancelled(responseObserver)) {
+                return;
+            }
+            if (throwable != null) {
+                responseObserver.onError(toStatusException(HeroSearchService.unwrap(throwable)));
+                return;
+            }
+            responseObserver.onCompleted();
+        });
+    }
+
+    private static boolean isCancelled(StreamObserver<?> responseObserver) {
+        return responseObserver instanceof ServerCallStreamObserver<?> serverObserver && serverObserver.isCancelled();
+    }
+
+    /**
+     * Maps a search failure to the error sent to the client.
+     *
+     * @param throwable The failure
+     * @return RESOURCE_EXHAUSTED when rate limited, INVALID_ARGUMENT for requests that cannot be served,
+     *         otherwise the underlying failure
+     */
+    private static Throwable toStatusException(Throwable throwable) {
+        if (throwable instanceof HeroSearchException searchException) {
+            if (searchException.getReason() == HeroSearchException.Reason.RATE_LIMITED) {
+                return Status.RESOURCE_EXHAUSTED
+                    .withDescription(searchException.getMessage())
+                    .asRuntimeException();
+            }
+            if (searchException.getReason() == HeroSearchException.Reason.INVALID_REQUEST) {
+                return Status.INVALID_ARGUMENT
+                    .withDescription(searchException.getMessage())
+                    .asRuntimeException();
+            }
+            if (searchException.getCause() != null) {
+                return searchException.getCause();
             }
-            
-            // Calculate start and end indices for the current page
-            int startIndex = pageNumber==0 ? 0 :(pageNumber - 1) * pageSize;
-            int endIndex = Math.min(startIndex + pageSize, totalCount);
-            
-            // Get the subset of IDs for the current page
-            var pageIds = allIds.stream()
-                .skip(startIndex)
-                .limit(endIndex - startIndex)
-                .collect(Collectors.toList());
-
-            SearchResponse.Builder responseBuilder = SearchResponse.newBuilder()
-                    .setResponse("success")
-                    .setResultsFor(request.getName())
-                    .setTotalCount(totalCount)
-                    .setCurrentPage(pageNumber)
-                    .setTotalPages(totalPages);
-
-            // Create a list of CompletableFuture for each hero retrieval
-            var heroFutures = pageIds.stream()
-                .map(id -> CompletableFuture.supplyAsync(
-                    () -> superheroInnerService.getHero(id),
-                    executor
-                ))
-                .collect(Collectors.toList());
-
-            // Wait for all futures to complete and collect results
-            CompletableFuture.allOf(heroFutures.toArray(new CompletableFuture[0]))
-                .thenAccept(v -> {
-                    heroFutures.stream()
-                        .map(CompletableFuture::join)
-                        .filter(hero -> hero != null) // Filter out null results
-                        .forEach(responseBuilder::addResults);
-                    
-                    responseObserver.onNext(responseBuilder.build());
-                    responseObserver.onCompleted();
-                })
-                .exceptionally(throwable -> {
-                    logger.error("Error processing hero retrieval", throwable);
-                    responseObserver.onError(throwable);
-                    return null;
-                });
-
-        } catch (Exception e) {
-            logger.error("Error processing request", e);
-            responseObserver.onError(e);
         }
+        return throwable;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.example.superheroproxy.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ *
+ * Instead of a token count, the bucket keeps the time at which it will be full again. Taking a token
+ * pushes that time one refill interval further, and a token is available as long as the time lies at
+ * most the full capacity of intervals ahead. The state is a single long swapped with compare-and-set,
+ * so concurrent callers never block each other and no task is needed to refill idle buckets.
+ */
+public class TokenBucket {
+
+    private final int capacity;
+    private final long intervalNanos;
+    private final long capacityNanos;
+    /** Time at which the bucket is full again; far in the past while it is full */
+    private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param permitsPerSecond Rate at which tokens are refilled
+     * @param capacity Most tokens the bucket holds, and so the largest burst
+     */
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        if (permitsPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.capacityNanos = intervalNanos * capacity;
+    }
+
+    /**
+     * Takes a token if the bucket has one.
+     *
+     * @return true if the token was taken, false if the bucket is empty
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    boolean tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return The number of tokens that can be taken right now
+     */
+    public int available() {
+        return available(System.nanoTime());
+    }
+
+    int available(long now) {
+        long owed = Math.max(fullAt.get(), now) - now;
+        return (int) ((capacityNanos - owed) / intervalNanos);
+    }
+
+    /**
+     * Returns how long until a token can be taken, assuming no one else takes one meanwhile.
+     *
+     * @param unit Unit of the result
+     * @return The wait time, 0 if a token is available now
+     */
+    public long timeUntilAvailable(TimeUnit unit) {
+        return unit.convert(nanosUntilAvailable(System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    long nanosUntilAvailable(long now) {
+        long owed = Math.max(fullAt.get(), now) - now;
+        return Math.max(0, owed + intervalNanos - capacityNanos);
+    }
+
+    /**
+     * @return Most tokens the bucket holds
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
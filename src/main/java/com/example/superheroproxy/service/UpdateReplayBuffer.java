@@ -0,0 +1,98 @@
+package com.example.superheroproxy.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size ring of the most recent encoded hero updates, kept off-heap.
+ *
+ * Updates are stored by their global sequence number: sequence {@code n} lives in slot
+ * {@code n % slotCount} until sequence {@code n + slotCount} overwrites it. Each slot holds
+ * the sequence, the payload length and the encoded update, so a reader can tell whether a slot
+ * still contains the sequence it is looking for. Payloads larger than a slot are not retained.
+ *
+ * Used to replay the updates a client missed while it was disconnected.
+ */
+public class UpdateReplayBuffer {
+    /** Slot header: sequence (8 bytes) followed by payload length (4 bytes) */
+    private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int slotCount;
+    private final int slotBytes;
+    private long latestSequence;
+
+    /**
+     * Allocates the ring in direct memory.
+     *
+     * @param slotCount Number of updates retained
+     * @param slotBytes Size of one slot, including the 12-byte header
+     */
+    public UpdateReplayBuffer(int slotCount, int slotBytes) {
+        if (slotCount <= 0 || slotBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Replay buffer needs at least one slot larger than " + HEADER_BYTES + " bytes");
+        }
+        this.slotCount = slotCount;
+        this.slotBytes = slotBytes;
+        this.buffer = ByteBuffer.allocateDirect(Math.multiplyExact(slotCount, slotBytes));
+    }
+
+    /**
+     * Stores an encoded update under its sequence number, overwriting the oldest retained update.
+     *
+     * @param sequence The global sequence number of the update
+     * @param payload The encoded update
+     * @return true if the update was retained, false if it does not fit in a slot
+     */
+    public synchronized boolean append(long sequence, byte[] payload) {
+        latestSequence = Math.max(latestSequence, sequence);
+        int offset = offset(sequence);
+        if (payload.length > slotBytes - HEADER_BYTES) {
+            // Mark the slot so readers see a gap instead of a stale update
+            buffer.putLong(offset, sequence);
+            buffer.putInt(offset + Long.BYTES, -1);
+            return false;
+        }
+        buffer.putLong(offset, sequence);
+        buffer.putInt(offset + Long.BYTES, payload.length);
+        buffer.put(offset + HEADER_BYTES, payload);
+        return true;
+    }
+
+    /**
+     * Returns the retained updates with a sequence greater than the given one, oldest first.
+     * Sequences that were overwritten, too large to retain, or not written yet are skipped.
+     *
+     * @param afterSequence The last sequence the caller already has
+     * @return Encoded updates in sequence order
+     */
+    public synchronized List<byte[]> readAfter(long afterSequence) {
+        List<byte[]> payloads = new ArrayList<>();
+        long first = Math.max(afterSequence + 1, latestSequence - slotCount + 1);
+        for (long sequence = Math.max(first, 1); sequence <= latestSequence; sequence++) {
+            int offset = offset(sequence);
+            int length = buffer.getInt(offset + Long.BYTES);
+            if (buffer.getLong(offset) != sequence || length < 0) {
+                continue;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_BYTES, payload);
+            payloads.add(payload);
+        }
+        return payloads;
+    }
+
+    /**
+     * Returns the oldest sequence that can still be replayed.
+     *
+     * @return The oldest retained sequence, or 0 if nothing was appended yet
+     */
+    public synchronized long getOldestSequence() {
+        return latestSequence == 0 ? 0 : Math.max(1, latestSequence - slotCount + 1);
+    }
+
+    private int offset(long sequence) {
+        return (int) (sequence % slotCount) * slotBytes;
+    }
+}
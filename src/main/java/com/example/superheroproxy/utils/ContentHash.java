@@ -0,0 +1,31 @@
+package com.example.superheroproxy.utils;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * 128-bit content hashes used as entity tags. Not a cryptographic hash: it only has to make
+ * accidental collisions between two versions of a hero or a search page practically impossible.
+ */
+public class ContentHash {
+
+    private static final HashFunction FUNCTION = Hashing.murmur3_128();
+
+    private ContentHash() {}
+
+    /**
+     * @param bytes The content to hash
+     * @return The hash as lowercase hex
+     */
+    public static String of(byte[] bytes) {
+        return FUNCTION.hashBytes(bytes).toString();
+    }
+
+    /**
+     * @return A hasher for content made of several parts; its hash renders as lowercase hex
+     */
+    public static Hasher newHasher() {
+        return FUNCTION.newHasher();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.superheroproxy.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Prunes protobuf messages to the fields named by a {@link FieldMask}.
+ *
+ * Serialized messages are sliced on the wire: kept fields are copied byte for byte and nested messages
+ * named by a deeper path are sliced recursively, so nothing is decoded into objects. Messages that are
+ * already objects are pruned by copying the kept fields into a new message. A path selecting a field
+ * keeps all of it, including a path that also appears with deeper sub-paths.
+ */
+public class FieldMaskSlicer {
+
+    private final Descriptor descriptor;
+    /** Kept fields by number; a null slicer keeps the whole field */
+    private final Map<Integer, FieldMaskSlicer> fields = new HashMap<>();
+
+    private FieldMaskSlicer(Descriptor descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Compiles a mask against a message type.
+     *
+     * @param descriptor The message type the mask applies to
+     * @param mask The mask
+     * @return The slicer
+     * @throws IllegalArgumentException If a path names an unknown field or goes through a field that is not a message
+     */
+    public static FieldMaskSlicer of(Descriptor descriptor, FieldMask mask) {
+        FieldMaskSlicer slicer = new FieldMaskSlicer(descriptor);
+        for (String path : mask.getPathsList()) {
+            slicer.add(path, path.split("\\."), 0);
+        }
+        return slicer;
+    }
+
+    private void add(String path, String[] names, int index) {
+        FieldDescriptor field = descriptor.findFieldByName(names[index]);
+        if (field == null) {
+            throw new IllegalArgumentException("Unknown field in mask path: " + path);
+        }
+        int number = field.getNumber();
+        if (index == names.length - 1) {
+            fields.put(number, null);
+            return;
+        }
+        if (field.getJavaType() != FieldDescriptor.JavaType.MESSAGE) {
+            throw new IllegalArgumentException("Mask path goes through a field that is not a message: " + path);
+        }
+        if (fields.containsKey(number) && fields.get(number) == null) {
+            // The whole field is already kept
+            return;
+        }
+        fields.computeIfAbsent(number, n -> new FieldMaskSlicer(field.getMessageType())).add(path, names, index + 1);
+    }
+
+    /**
+     * Slices a serialized message.
+     *
+     * @param message The serialized message
+     * @return The serialized message with only the masked fields
+     * @throws InvalidProtocolBufferException If the bytes are not a valid message
+     */
+    public byte[] slice(byte[] message) throws InvalidProtocolBufferException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.length);
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+        try {
+            slice(CodedInputStream.newInstance(message), out);
+            out.flush();
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void slice(CodedInputStream in, CodedOutputStream out) throws IOException {
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            int number = WireFormat.getTagFieldNumber(tag);
+            if (!fields.containsKey(number)) {
+                in.skipField(tag);
+                continue;
+            }
+            FieldMaskSlicer nested = fields.get(number);
+            if (nested == null || WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                copyField(tag, in, out);
+                continue;
+            }
+            out.writeByteArray(number, nested.slice(in.readByteArray()));
+        }
+    }
+
+    /**
+     * Copies the field whose tag was just read, tag and value, without decoding it.
+     */
+    private static void copyField(int tag, CodedInputStream in, CodedOutputStream out) throws IOException {
+        int number = WireFormat.getTagFieldNumber(tag);
+        switch (WireFormat.getTagWireType(tag)) {
+            case WireFormat.WIRETYPE_VARINT -> out.writeUInt64(number, in.readRawVarint64());
+            case WireFormat.WIRETYPE_FIXED64 -> out.writeFixed64(number, in.readRawLittleEndian64());
+            case WireFormat.WIRETYPE_FIXED32 -> out.writeFixed32(number, in.readRawLittleEndian32());
+            case WireFormat.WIRETYPE_LENGTH_DELIMITED -> out.writeByteArray(number, in.readByteArray());
+            case WireFormat.WIRETYPE_START_GROUP -> {
+                out.writeTag(number, WireFormat.WIRETYPE_START_GROUP);
+                int inner;
+                while ((inner = in.readTag()) != 0 && WireFormat.getTagWireType(inner) != WireFormat.WIRETYPE_END_GROUP) {
+                    copyField(inner, in, out);
+                }
+                if (inner == 0 || WireFormat.getTagFieldNumber(inner) != number) {
+                    throw new InvalidProtocolBufferException("Group " + number + " is not closed by its end tag");
+                }
+                out.writeTag(number, WireFormat.WIRETYPE_END_GROUP);
+            }
+            default -> throw new InvalidProtocolBufferException("Invalid wire type in tag " + tag);
+        }
+    }
+
+    /**
+     * Prunes a message object.
+     *
+     * @param message The message
+     * @return A message of the same type with only the masked fields
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Message> T apply(T message) {
+        Message.Builder builder = message.newBuilderForType();
+        for (Map.Entry<Integer, FieldMaskSlicer> entry : fields.entrySet()) {
+            FieldDescriptor field = descriptor.findFieldByNumber(entry.getKey());
+            FieldMaskSlicer nested = entry.getValue();
+            if (field.isRepeated()) {
+                for (Object value : (List<?>) message.getField(field)) {
+                    builder.addRepeatedField(field, nested == null ? value : nested.apply((Message) value));
+                }
+            } else if (!field.hasPresence() || message.hasField(field)) {
+                Object value = message.getField(field);
+                builder.setField(field, nested == null ? value : nested.apply((Message) value));
+            }
+        }
+        return (T) builder.build();
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.superheroproxy.utils;
+
+import com.example.superheroproxy.proto.Biography;
+import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.proto.HeroUpdate;
+import com.example.superheroproxy.proto.PowerStats;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+
+/**
+ * Writes a hero update as UTF-8 JSON straight from the protobuf message, without building
+ * intermediate maps. The output has the same shape as {@link Converter#convertHeroUpdateToMap}
+ * serialized by Jackson, so a payload can be encoded once and written to any number of clients.
+ * Batches of heroes are written the same way, each hero in the shape of {@link Converter#convertHeroToMap}.
+ */
+public class HeroUpdateJsonEncoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private HeroUpdateJsonEncoder() {}
+
+    /**
+     * Encodes an update as compact JSON.
+     *
+     * @param update The update to encode
+     * @return The UTF-8 JSON bytes
+     */
+    public static byte[] encode(HeroUpdate update) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("heroId", update.getHeroId());
+            generator.writeFieldName("hero");
+            writeHero(generator, update.getHero());
+            generator.writeStringField("updateType", update.getUpdateType().name());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a batch of heroes as compact JSON: {@code {"heroes": [...], "missingIds": [...]}}.
+     *
+     * @param heroes The found heroes
+     * @param missingIds The IDs that were not found
+     * @return The UTF-8 JSON bytes
+     */
+    public static byte[] encodeBatch(Collection<Hero> heroes, Collection<String> missingIds) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 * (heroes.size() + 1));
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("heroes");
+            for (Hero hero : heroes) {
+                writeHero(generator, hero);
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("missingIds");
+            for (String id : missingIds) {
+                generator.writeString(id);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeHero(JsonGenerator generator, Hero hero) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", hero.getId());
+        generator.writeStringField("name", hero.getName());
+        generator.writeFieldName("powerstats");
+        writePowerStats(generator, hero.getPowerstats());
+        generator.writeFieldName("biography");
+        writeBiography(generator, hero.getBiography());
+        generator.writeEndObject();
+    }
+
+    private static void writePowerStats(JsonGenerator generator, PowerStats powerStats) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("intelligence", powerStats.getIntelligence());
+        generator.writeStringField("strength", powerStats.getStrength());
+        generator.writeStringField("speed", powerStats.getSpeed());
+        generator.writeStringField("durability", powerStats.getDurability());
+        generator.writeStringField("power", powerStats.getPower());
+        generator.writeStringField("combat", powerStats.getCombat());
+        generator.writeEndObject();
+    }
+
+    private static void writeBiography(JsonGenerator generator, Biography biography) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("fullName", biography.getFullName());
+        generator.writeStringField("alterEgos", biography.getAlterEgos());
+        generator.writeArrayFieldStart("aliases");
+        for (String alias : biography.getAliasesList()) {
+            generator.writeString(alias);
+        }
+        generator.writeEndArray();
+        generator.writeStringField("placeOfBirth", biography.getPlaceOfBirth());
+        generator.writeStringField("firstAppearance", biography.getFirstAppearance());
+        generator.writeStringField("publisher", biography.getPublisher());
+        generator.writeStringField("alignment", biography.getAlignment());
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.superheroproxy.utils;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.FieldMaskUtil;
+
+/**
+ * Field-level diff of protobuf messages, driven by the message descriptors.
+ * Used to send subscribers only the hero fields that changed between two versions.
+ */
+public class ProtoDiff {
+
+    private static final FieldMaskUtil.MergeOptions REPLACE_ALL = new FieldMaskUtil.MergeOptions()
+            .setReplaceMessageFields(true)
+            .setReplaceRepeatedFields(true)
+            .setReplacePrimitiveFields(true);
+
+    private ProtoDiff() {}
+
+    /**
+     * Computes the paths of all fields that differ between two messages of the same type.
+     * Singular message fields present on both sides are compared field by field, so a change
+     * to one powerstat yields "powerstats.speed" rather than "powerstats".
+     *
+     * @param before The previous message
+     * @param after The current message
+     * @return A field mask listing the changed paths; empty if the messages are equal
+     */
+    public static FieldMask changedFields(Message before, Message after) {
+        FieldMask.Builder mask = FieldMask.newBuilder();
+        collectChanges("", before, after, mask);
+        return mask.build();
+    }
+
+    /**
+     * Copies the fields named by the mask from a message into a builder,
+     * replacing (or clearing) whatever the builder held for those paths.
+     *
+     * @param mask The paths to copy
+     * @param source The message to copy from
+     * @param destination The builder to copy into
+     */
+    public static void copyFields(FieldMask mask, Message source, Message.Builder destination) {
+        FieldMaskUtil.merge(mask, source, destination, REPLACE_ALL);
+    }
+
+    private static void collectChanges(String prefix, Message before, Message after, FieldMask.Builder mask) {
+        for (FieldDescriptor field : after.getDescriptorForType().getFields()) {
+            String path = prefix + field.getName();
+            boolean nestedMessage = field.getJavaType() == FieldDescriptor.JavaType.MESSAGE && !field.isRepeated();
+
+            if (nestedMessage && before.hasField(field) && after.hasField(field)) {
+                collectChanges(path + ".", (Message) before.getField(field), (Message) after.getField(field), mask);
+            } else if (field.hasPresence() && before.hasField(field) != after.hasField(field)) {
+                mask.addPaths(path);
+            } else if (!before.getField(field).equals(after.getField(field))) {
+                mask.addPaths(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.superheroproxy.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.grpc.Attributes;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+
+class ClientRateLimitInterceptorTest {
+
+    private ClientRateLimitInterceptor interceptor;
+    private ServerCallHandler<String, String> handler;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // Refills far slower than the test runs, so only the burst counts
+        interceptor = new ClientRateLimitInterceptor(0.001, 2, 100, Duration.ofMinutes(10));
+        handler = mock(ServerCallHandler.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ServerCall<String, String> callFrom(String host, int port) {
+        ServerCall<String, String> call = mock(ServerCall.class);
+        when(call.getAttributes()).thenReturn(Attributes.newBuilder()
+                .set(Grpc.TRANSPORT_ATTR_REMOTE_ADDR, new InetSocketAddress(host, port))
+                .build());
+        return call;
+    }
+
+    private static Metadata withApiKey(String apiKey) {
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of("x-api-key", Metadata.ASCII_STRING_MARSHALLER), apiKey);
+        return headers;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAdmittedCallEndsWithRemainingQuota() {
+        // Given
+        ServerCall<String, String> call = callFrom("10.0.0.1", 5000);
+        Metadata headers = new Metadata();
+
+        // When
+        interceptor.interceptCall(call, headers, handler);
+        ArgumentCaptor<ServerCall<String, String>> forwarded = ArgumentCaptor.forClass(ServerCall.class);
+        verify(handler).startCall(forwarded.capture(), any(Metadata.class));
+        forwarded.getValue().close(Status.OK, new Metadata());
+
+        // Then
+        ArgumentCaptor<Metadata> trailers = ArgumentCaptor.forClass(Metadata.class);
+        verify(call).close(any(Status.class), trailers.capture());
+        assertEquals("2", trailers.getValue().get(ClientRateLimitInterceptor.LIMIT));
+        assertEquals("1", trailers.getValue().get(ClientRateLimitInterceptor.REMAINING));
+    }
+
+    @Test
+    void testNoisyClientDoesNotStarveOthers() {
+        // Given - one client has used up its burst over two connections
+        interceptor.interceptCall(callFrom("10.0.0.1", 5000), new Metadata(), handler);
+        interceptor.interceptCall(callFrom("10.0.0.1", 5001), new Metadata(), handler);
+        ServerCall<String, String> rejected = callFrom("10.0.0.1", 5002);
+
+        // When
+        interceptor.interceptCall(rejected, new Metadata(), handler);
+        interceptor.interceptCall(callFrom("10.0.0.2", 5000), new Metadata(), handler);
+
+        // Then - only the noisy client is turned away, with a hint when to retry
+        ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+        ArgumentCaptor<Metadata> trailers = ArgumentCaptor.forClass(Metadata.class);
+        verify(rejected).close(status.capture(), trailers.capture());
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, status.getValue().getCode());
+        assertEquals("0", trailers.getValue().get(ClientRateLimitInterceptor.REMAINING));
+        assertNotNull(trailers.getValue().get(ClientRateLimitInterceptor.RETRY_AFTER_MILLIS));
+        verify(handler, times(3)).startCall(any(), any());
+        assertEquals(2, interceptor.trackedClients());
+    }
+
+    @Test
+    void testRotatingApiKeysDoesNotGetAFreshBucket() {
+        // Given - one address has used up its burst under two different keys
+        interceptor.interceptCall(callFrom("10.0.0.1", 5000), withApiKey("key-1"), handler);
+        interceptor.interceptCall(callFrom("10.0.0.1", 5001), withApiKey("key-2"), handler);
+        ServerCall<String, String> rejected = callFrom("10.0.0.1", 5002);
+
+        // When
+        interceptor.interceptCall(rejected, withApiKey("key-3"), handler);
+
+        // Then
+        ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+        verify(rejected).close(status.capture(), any(Metadata.class));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, status.getValue().getCode());
+        assertEquals(1, interceptor.trackedClients());
+    }
+}
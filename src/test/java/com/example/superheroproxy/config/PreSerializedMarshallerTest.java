@@ -0,0 +1,80 @@
+package com.example.superheroproxy.config;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.proto.HeroUpdate;
+import com.example.superheroproxy.proto.NotificationServiceGrpc;
+import com.example.superheroproxy.proto.UpdateType;
+
+import io.grpc.Drainable;
+import io.grpc.ServerServiceDefinition;
+
+class PreSerializedMarshallerTest {
+
+    private final PreSerializedMarshaller<HeroUpdate> marshaller =
+            new PreSerializedMarshaller<>(HeroUpdate.getDefaultInstance());
+
+    private HeroUpdate update() {
+        return HeroUpdate.newBuilder()
+                .setHeroId("620")
+                .setHero(Hero.newBuilder().setId("620").setName("Spider-Man").build())
+                .setUpdateType(UpdateType.UPDATED)
+                .build();
+    }
+
+    @Test
+    void testPreSerializedUpdateIsWrittenFromSharedBytes() throws Exception {
+        HeroUpdate update = update();
+        byte[] encoded = marshaller.preSerialize(update);
+
+        // Same instance is only encoded once
+        assertSame(encoded, marshaller.preSerialize(update));
+
+        InputStream stream = marshaller.stream(update);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int written = ((Drainable) stream).drainTo(out);
+
+        assertEquals(encoded.length, written);
+        assertArrayEquals(update.toByteArray(), out.toByteArray());
+    }
+
+    @Test
+    void testUnknownInstanceFallsBackToProtobufMarshaller() {
+        HeroUpdate update = update();
+
+        HeroUpdate parsed = marshaller.parse(marshaller.stream(update));
+
+        assertEquals(update, parsed);
+    }
+
+    @Test
+    void testRebindKeepsAllMethods() {
+        ServerServiceDefinition generated = NotificationServiceGrpc.bindService(new NotificationServiceGrpc.AsyncService() {});
+
+        ServerServiceDefinition rebound = marshaller.rebind(generated);
+
+        assertEquals(generated.getMethods().size(), rebound.getMethods().size());
+        assertSame(marshaller, rebound.getMethod(NotificationServiceGrpc.getSubscribeToUpdatesMethod().getFullMethodName())
+                .getMethodDescriptor().getResponseMarshaller());
+    }
+
+    @Test
+    void testRegisteredEncodingIsWrittenAsIs() throws Exception {
+        HeroUpdate update = update();
+        byte[] encoded = update.toByteArray();
+
+        marshaller.registerEncoded(update, encoded);
+        InputStream stream = marshaller.stream(update);
+
+        assertEquals(encoded.length, stream.available());
+        assertEquals(update, marshaller.parse(stream));
+    }
+}
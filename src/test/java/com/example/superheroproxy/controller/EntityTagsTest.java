@@ -0,0 +1,29 @@
+package com.example.superheroproxy.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class EntityTagsTest {
+
+    @Test
+    void testRepresentationsHaveDistinctTags() {
+        assertEquals("\"abc\"", EntityTags.tag("abc", false));
+        assertEquals("\"abc-pb\"", EntityTags.tag("abc", true));
+    }
+
+    @Test
+    void testIfNoneMatchUsesWeakComparison() {
+        String tag = EntityTags.tag("abc", false);
+
+        assertTrue(EntityTags.matches("\"abc\"", tag));
+        assertTrue(EntityTags.matches("W/\"abc\"", tag));
+        assertTrue(EntityTags.matches("\"other\", \"abc\"", tag));
+        assertTrue(EntityTags.matches("*", tag));
+        assertFalse(EntityTags.matches("\"abc-pb\"", tag));
+        assertFalse(EntityTags.matches(null, tag));
+        assertFalse(EntityTags.matches("*", null));
+    }
+}
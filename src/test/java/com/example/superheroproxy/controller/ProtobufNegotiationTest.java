@@ -0,0 +1,29 @@
+package com.example.superheroproxy.controller;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ProtobufNegotiationTest {
+
+    @Test
+    void testExplicitProtobufIsPreferred() {
+        assertTrue(ProtobufNegotiation.prefersProtobuf("application/x-protobuf"));
+        assertTrue(ProtobufNegotiation.prefersProtobuf("application/x-protobuf, application/json;q=0.5"));
+    }
+
+    @Test
+    void testJsonAndWildcardClientsKeepJson() {
+        assertFalse(ProtobufNegotiation.prefersProtobuf(null));
+        assertFalse(ProtobufNegotiation.prefersProtobuf("*/*"));
+        assertFalse(ProtobufNegotiation.prefersProtobuf("text/html,application/xhtml+xml,*/*;q=0.8"));
+        assertFalse(ProtobufNegotiation.prefersProtobuf("application/json, application/x-protobuf;q=0.5"));
+        assertFalse(ProtobufNegotiation.prefersProtobuf("application/x-protobuf;q=0"));
+    }
+
+    @Test
+    void testMalformedHeaderFallsBackToJson() {
+        assertFalse(ProtobufNegotiation.prefersProtobuf("not a media type"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.superheroproxy.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class SseWriteQueueTest {
+
+    private SseEmitter emitter;
+    /** Writer tasks, run by the test */
+    private Queue<Runnable> writerTasks;
+    private Consumer<Exception> onWriteError;
+
+    private final byte[] hero1v1 = "hero1-v1".getBytes();
+    private final byte[] hero1v2 = "hero1-v2".getBytes();
+    private final byte[] hero2 = "hero2".getBytes();
+    private final byte[] hero3 = "hero3".getBytes();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        emitter = mock(SseEmitter.class);
+        writerTasks = new ArrayDeque<>();
+        onWriteError = mock(Consumer.class);
+    }
+
+    private SseWriteQueue queue(int capacity, boolean disconnectOnOverflow) {
+        return new SseWriteQueue(emitter, capacity, disconnectOnOverflow, TimeUnit.SECONDS.toNanos(30),
+                writerTasks::add, onWriteError);
+    }
+
+    private void runWriters() {
+        while (!writerTasks.isEmpty()) {
+            writerTasks.poll().run();
+        }
+    }
+
+    @Test
+    void testNewerUpdateForQueuedHeroReplacesIt() throws IOException {
+        // Given
+        SseWriteQueue queue = queue(10, false);
+
+        // When
+        assertEquals(SseWriteQueue.Offer.QUEUED, queue.offer("hero1", hero1v1));
+        assertEquals(SseWriteQueue.Offer.QUEUED, queue.offer("hero2", hero2));
+        assertEquals(SseWriteQueue.Offer.COALESCED, queue.offer("hero1", hero1v2));
+        runWriters();
+
+        // Then - only the latest hero1 update is written, in its original place
+        InOrder order = inOrder(emitter);
+        order.verify(emitter).send(hero1v2, MediaType.APPLICATION_JSON);
+        order.verify(emitter).send(hero2, MediaType.APPLICATION_JSON);
+        verify(emitter, never()).send(hero1v1, MediaType.APPLICATION_JSON);
+        assertEquals(0, queue.depth());
+    }
+
+    @Test
+    void testFullQueueDropsOldestUpdate() throws IOException {
+        // Given
+        SseWriteQueue queue = queue(2, false);
+        queue.offer("hero1", hero1v1);
+        queue.offer("hero2", hero2);
+
+        // When
+        SseWriteQueue.Offer offer = queue.offer("hero3", hero3);
+        runWriters();
+
+        // Then
+        assertEquals(SseWriteQueue.Offer.DROPPED_OLDEST, offer);
+        verify(emitter, never()).send(hero1v1, MediaType.APPLICATION_JSON);
+        verify(emitter).send(hero2, MediaType.APPLICATION_JSON);
+        verify(emitter).send(hero3, MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    void testFullQueueDisconnectsWithDisconnectPolicy() throws IOException {
+        // Given
+        SseWriteQueue queue = queue(2, true);
+        queue.offer("hero1", hero1v1);
+        queue.offer("hero2", hero2);
+
+        // When
+        SseWriteQueue.Offer offer = queue.offer("hero3", hero3);
+        runWriters();
+
+        // Then - the queue is closed and nothing more is written
+        assertEquals(SseWriteQueue.Offer.REJECTED, offer);
+        assertEquals(SseWriteQueue.Offer.REJECTED, queue.offer("hero1", hero1v2));
+        verify(emitter, never()).send(any(), any(MediaType.class));
+    }
+
+    @Test
+    void testPingIsOnlyQueuedWhenNoUpdateIsWaiting() throws IOException {
+        // Given
+        SseWriteQueue queue = queue(10, false);
+        byte[] ping = "hero1 ping".getBytes();
+        queue.offer("hero1", hero1v1);
+
+        // When - a ping arrives behind an update, then another one once the queue is drained
+        SseWriteQueue.Offer behindUpdate = queue.offerPing(ping);
+        runWriters();
+        SseWriteQueue.Offer idle = queue.offerPing(ping);
+        SseWriteQueue.Offer second = queue.offerPing(ping);
+        runWriters();
+
+        // Then - the update kept the connection alive the first time, the idle queue wrote one ping
+        assertEquals(SseWriteQueue.Offer.COALESCED, behindUpdate);
+        assertEquals(SseWriteQueue.Offer.QUEUED, idle);
+        assertEquals(SseWriteQueue.Offer.COALESCED, second);
+        InOrder order = inOrder(emitter);
+        order.verify(emitter).send(hero1v1, MediaType.APPLICATION_JSON);
+        order.verify(emitter).send(ping, MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    void testWriteErrorClosesQueue() throws IOException {
+        // Given
+        SseWriteQueue queue = queue(10, false);
+        IOException failure = new IOException("Broken pipe");
+        doThrow(failure).when(emitter).send(hero1v1, MediaType.APPLICATION_JSON);
+
+        // When
+        queue.offer("hero1", hero1v1);
+        queue.offer("hero2", hero2);
+        runWriters();
+
+        // Then
+        verify(onWriteError).accept(failure);
+        verify(emitter, times(0)).send(hero2, MediaType.APPLICATION_JSON);
+        assertEquals(SseWriteQueue.Offer.REJECTED, queue.offer("hero3", hero3));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.superheroproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @BeforeEach
+    void setUp() {
+        // 8 buckets of 10ms, so delays above 80ms wrap around the wheel
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8, "Test-Timer");
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    void testTaskRunsAfterDelay() throws InterruptedException {
+        // Given
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        // When
+        HashedWheelTimer.Timeout timeout = timer.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+
+        // Then
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    void testDelayLongerThanOneRevolution() throws InterruptedException {
+        // Given
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        // When
+        timer.schedule(latch::countDown, 250, TimeUnit.MILLISECONDS);
+
+        // Then
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250);
+    }
+
+    @Test
+    void testCancelledTaskDoesNotRun() throws InterruptedException {
+        // Given
+        AtomicInteger runs = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.schedule(runs::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+
+        // When
+        assertTrue(timeout.cancel());
+        Thread.sleep(150);
+
+        // Then
+        assertEquals(0, runs.get());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.isExpired());
+        assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    void testTaskCanRescheduleItself() throws InterruptedException {
+        // Given
+        CountDownLatch latch = new CountDownLatch(3);
+        Runnable[] task = new Runnable[1];
+        task[0] = () -> {
+            latch.countDown();
+            if (latch.getCount() > 0) {
+                timer.schedule(task[0], 20, TimeUnit.MILLISECONDS);
+            }
+        };
+
+        // When
+        timer.schedule(task[0], 20, TimeUnit.MILLISECONDS);
+
+        // Then
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+}
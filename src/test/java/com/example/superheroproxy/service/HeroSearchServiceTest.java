@@ -0,0 +1,303 @@
+package com.example.superheroproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.example.superheroproxy.config.AppConfig;
+import com.example.superheroproxy.config.AsyncConfig;
+import com.example.superheroproxy.proto.Hero;
+import com.google.common.util.concurrent.RateLimiter;
+
+@ExtendWith(MockitoExtension.class)
+class HeroSearchServiceTest {
+
+    @Mock
+    private SuperheroInnerService superheroInnerService;
+
+    @Mock
+    private HeroCacheReader heroCacheReader;
+
+    private AppConfig appConfig;
+
+    @BeforeEach
+    void setUp() {
+        AsyncConfig asyncConfig = new AsyncConfig();
+        asyncConfig.setCorePoolSize(2);
+        asyncConfig.setMaxPoolSize(4);
+        asyncConfig.setQueueCapacity(50);
+        asyncConfig.setThreadNamePrefix("Test-Async-");
+        appConfig = new AppConfig(asyncConfig);
+    }
+
+    @Test
+    void testSearchDoesNotBlockCaller() throws Exception {
+        // Given - the ID lookup waits until the test releases it
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig);
+        CountDownLatch release = new CountDownLatch(1);
+        Hero mockHero = Hero.newBuilder().setId("123").setName("Batman").build();
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Set.of("123");
+        }).when(superheroInnerService).searchHeroIds("Batman");
+        doReturn(mockHero).when(superheroInnerService).getHero("123");
+
+        // When
+        CompletableFuture<HeroSearchPage> future = service.search("Batman", 1, 10);
+
+        // Then - the future is returned while the lookup is still running
+        assertFalse(future.isDone());
+
+        // When - the lookup finishes
+        release.countDown();
+        HeroSearchPage page = future.get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals("Batman", page.getQuery());
+        assertEquals(1, page.getTotalCount());
+        assertEquals(1, page.getCurrentPage());
+        assertEquals(1, page.getTotalPages());
+        assertEquals("Batman", page.getHeroes().get(0).getName());
+    }
+
+    @Test
+    void testRateLimitedSearchFailsWithTypedError() throws Exception {
+        // Given - the only permit has been used
+        RateLimiter rateLimiter = RateLimiter.create(1.0);
+        rateLimiter.tryAcquire();
+        HeroSearchService service = new HeroSearchService(superheroInnerService, rateLimiter, appConfig);
+
+        // When
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> service.search("Batman", 1, 10).get(5, TimeUnit.SECONDS));
+
+        // Then
+        HeroSearchException cause = assertInstanceOf(HeroSearchException.class, e.getCause());
+        assertEquals(HeroSearchException.Reason.RATE_LIMITED, cause.getReason());
+        verify(superheroInnerService, never()).searchHeroIds(anyString());
+    }
+
+    @Test
+    void testLookupFailureIsReportedAsTypedError() {
+        // Given
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig);
+        RuntimeException failure = new RuntimeException("Test error");
+        doThrow(failure).when(superheroInnerService).searchHeroIds("ErrorHero");
+
+        // When
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> service.search("ErrorHero", 1, 10).get(5, TimeUnit.SECONDS));
+
+        // Then
+        HeroSearchException cause = assertInstanceOf(HeroSearchException.class, e.getCause());
+        assertEquals(HeroSearchException.Reason.LOOKUP_FAILED, cause.getReason());
+        assertEquals(failure, cause.getCause());
+    }
+
+    @Test
+    void testHeldPageIsNotFetchedAgain() throws Exception {
+        // Given - both heroes of the page have entity tags
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig, heroCacheReader);
+        doReturn(Set.of("1")).when(superheroInnerService).searchHeroIds("Batman");
+        doReturn(Hero.newBuilder().setId("1").setName("Batman").build()).when(superheroInnerService).getHero("1");
+        doReturn(Map.of("1", "tag1")).when(heroCacheReader).getHeroETags(List.of("1"));
+
+        // When - the first search tags the page
+        HeroSearchPage first = service.searchTagged("Batman", 1, 10, tag -> false).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertNotNull(first.getETag());
+        assertFalse(first.isNotModified());
+        assertEquals(1, first.getHeroes().size());
+
+        // When - the caller sends the tag back
+        HeroSearchPage second = service.searchTagged("Batman", 1, 10, first.getETag()::equals).get(5, TimeUnit.SECONDS);
+
+        // Then - the page is not modified and its hero was only fetched the first time
+        assertTrue(second.isNotModified());
+        assertEquals(first.getETag(), second.getETag());
+        assertTrue(second.getHeroes().isEmpty());
+        verify(superheroInnerService).getHero("1");
+    }
+
+    @Test
+    void testPageTokenContinuesFromSnapshotWithoutSearchingAgain() throws Exception {
+        // Given - heroes 1 to 12, so IDs have to be ordered numerically
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig);
+        Set<String> ids = new LinkedHashSet<>();
+        for (int i = 12; i >= 1; i--) {
+            ids.add(String.valueOf(i));
+            doReturn(Hero.newBuilder().setId(String.valueOf(i)).build()).when(superheroInnerService).getHero(String.valueOf(i));
+        }
+        doReturn(ids).when(superheroInnerService).searchHeroIds("hero");
+
+        // When
+        HeroSearchPage first = service.search("hero", 1, 5).get(5, TimeUnit.SECONDS);
+        HeroSearchPage second = service.search("hero", 0, 0, first.getNextPageToken(), null).get(5, TimeUnit.SECONDS);
+        HeroSearchPage third = service.search("hero", 0, 0, second.getNextPageToken(), null).get(5, TimeUnit.SECONDS);
+
+        // Then - later pages are cut from the snapshot of the first one
+        assertEquals(List.of("1", "2", "3", "4", "5"), first.getHeroes().stream().map(Hero::getId).toList());
+        assertEquals(List.of("6", "7", "8", "9", "10"), second.getHeroes().stream().map(Hero::getId).toList());
+        assertEquals(List.of("11", "12"), third.getHeroes().stream().map(Hero::getId).toList());
+        assertEquals(2, second.getCurrentPage());
+        assertEquals(3, third.getCurrentPage());
+        assertEquals(3, third.getTotalPages());
+        assertNull(third.getNextPageToken());
+        verify(superheroInnerService).searchHeroIds("hero");
+    }
+
+    @Test
+    void testPageTokenOfAnotherSearchIsRejected() throws Exception {
+        // Given
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig);
+        doReturn(Set.of("1", "2")).when(superheroInnerService).searchHeroIds("hero");
+        doReturn(Hero.newBuilder().setId("1").build()).when(superheroInnerService).getHero("1");
+        String token = service.search("hero", 1, 1).get(5, TimeUnit.SECONDS).getNextPageToken();
+
+        // When
+        ExecutionException foreign = assertThrows(ExecutionException.class,
+                () -> service.search("villain", 0, 0, token, null).get(5, TimeUnit.SECONDS));
+        ExecutionException malformed = assertThrows(ExecutionException.class,
+                () -> service.search("hero", 0, 0, "not a token", null).get(5, TimeUnit.SECONDS));
+
+        // Then
+        assertNotNull(token);
+        assertEquals(HeroSearchException.Reason.INVALID_REQUEST,
+                assertInstanceOf(HeroSearchException.class, foreign.getCause()).getReason());
+        assertEquals(HeroSearchException.Reason.INVALID_REQUEST,
+                assertInstanceOf(HeroSearchException.class, malformed.getCause()).getReason());
+    }
+
+    @Test
+    void testBatchReadsCacheOnceAndFetchesOnlyMissingHeroes() throws Exception {
+        // Given - hero 1 is cached, hero 2 is not, hero 3 does not exist
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig, heroCacheReader);
+        Hero hero1 = Hero.newBuilder().setId("1").setName("Batman").build();
+        Hero hero2 = Hero.newBuilder().setId("2").setName("Superman").build();
+        doReturn(Map.of("1", hero1)).when(heroCacheReader).getHeroes(Set.of("1", "2", "3"), null);
+        doReturn(hero2).when(superheroInnerService).getHero("2");
+        List<Hero> delivered = new ArrayList<>();
+
+        // When - hero 1 is asked for twice
+        HeroBatch batch = service.getHeroes(List.of("2", "1", "3", "1"), delivered::add).get(5, TimeUnit.SECONDS);
+
+        // Then - heroes are in request order, the cached one was delivered first and fetched nowhere else
+        assertEquals(List.of(hero2, hero1), batch.getHeroes());
+        assertEquals(List.of("3"), batch.getMissingIds());
+        assertEquals(List.of(hero1, hero2), delivered);
+        verify(superheroInnerService, never()).getHero("1");
+    }
+
+    @Test
+    void testOversizedBatchIsRejected() {
+        // Given
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig, heroCacheReader);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i <= HeroSearchService.MAX_BATCH_SIZE; i++) {
+            ids.add(String.valueOf(i));
+        }
+
+        // When
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> service.getHeroes(ids).get(5, TimeUnit.SECONDS));
+
+        // Then
+        HeroSearchException cause = assertInstanceOf(HeroSearchException.class, e.getCause());
+        assertEquals(HeroSearchException.Reason.INVALID_REQUEST, cause.getReason());
+    }
+
+    @Test
+    void testStreamedSearchSendsPageThenCachedHeroesFirst() throws Exception {
+        // Given - hero 1 is cached, hero 2 is fetched from the upstream
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig, heroCacheReader);
+        Hero hero1 = Hero.newBuilder().setId("1").setName("Batman").build();
+        Hero hero2 = Hero.newBuilder().setId("2").setName("Batgirl").build();
+        Set<String> ids = new LinkedHashSet<>(List.of("1", "2"));
+        doReturn(ids).when(superheroInnerService).searchHeroIds("Bat");
+        doReturn(Map.of("1", hero1)).when(heroCacheReader).getHeroes(List.of("1", "2"), null);
+        doReturn(hero2).when(superheroInnerService).getHero("2");
+        List<Object> events = new CopyOnWriteArrayList<>();
+
+        // When
+        HeroSearchPage page = service.searchStream("Bat", 1, 10,
+                (info, heroIds) -> events.add(heroIds),
+                events::add).get(5, TimeUnit.SECONDS);
+
+        // Then - the page IDs come first, then the cached hero, then the fetched one
+        assertEquals(List.of(List.of("1", "2"), hero1, hero2), events);
+        assertEquals(2, page.getTotalCount());
+        assertEquals(List.of(hero1, hero2), page.getHeroes());
+    }
+
+    @Test
+    void testCancelledStreamFetchesNothing() throws Exception {
+        // Given - the ID lookup waits until the test releases it
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig, heroCacheReader);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Set.of("1", "2");
+        }).when(superheroInnerService).searchHeroIds("Bat");
+        List<Object> events = new CopyOnWriteArrayList<>();
+
+        // When - the client goes away before the page is known
+        CompletableFuture<HeroSearchPage> stream = service.searchStream("Bat", 1, 10,
+                (info, heroIds) -> events.add(heroIds), events::add);
+        stream.cancel(false);
+        release.countDown();
+
+        // Then
+        verify(superheroInnerService, after(500).never()).getHero(anyString());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void testCancelledBatchFetchesNothing() throws Exception {
+        // Given - the cache read waits until the test releases it
+        HeroSearchService service = new HeroSearchService(superheroInnerService, RateLimiter.create(10.0), appConfig, heroCacheReader);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Map.of();
+        }).when(heroCacheReader).getHeroes(Set.of("1", "2"), null);
+        List<Hero> delivered = new CopyOnWriteArrayList<>();
+
+        // When - the client goes away before the cache answers
+        CompletableFuture<HeroBatch> batch = service.getHeroes(List.of("1", "2"), delivered::add);
+        batch.cancel(false);
+        release.countDown();
+
+        // Then
+        verify(superheroInnerService, after(500).never()).getHero(anyString());
+        assertTrue(delivered.isEmpty());
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.superheroproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class HeroVersionCounterTest {
+
+    @Test
+    void testLocalVersionsIncreaseAndStayAboveTheFloor() {
+        // Given
+        HeroVersionCounter counter = new HeroVersionCounter(null, null);
+
+        // When
+        long first = counter.next("hero1", 0);
+        long second = counter.next("hero1", 0);
+        long lifted = counter.next("hero1", 50);
+        long other = counter.next("hero2", 0);
+
+        // Then
+        assertEquals(1, first);
+        assertEquals(2, second);
+        assertEquals(51, lifted);
+        assertEquals(1, other);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.superheroproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NotificationDispatcherTest {
+
+    private NotificationDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new NotificationDispatcher(4, 1000, "Test-Shard-");
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testTasksForSameKeyRunInSubmissionOrder() throws InterruptedException {
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(500);
+
+        for (int i = 0; i < 500; i++) {
+            int value = i;
+            assertTrue(dispatcher.submit("620", () -> {
+                executed.add(value);
+                latch.countDown();
+            }));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, executed.get(i));
+        }
+    }
+
+    @Test
+    void testQueueDepthIsReportedPerShard() throws InterruptedException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        dispatcher.submit("620", () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatcher.submit("620", () -> { });
+        dispatcher.submit("620", () -> { });
+
+        Thread.sleep(100);
+        int[] depths = dispatcher.getQueueDepths();
+        assertEquals(4, depths.length);
+        assertEquals(2, depths[dispatcher.shardIndex("620")]);
+
+        blocker.countDown();
+    }
+
+    @Test
+    void testFullShardRejectsTasks() throws InterruptedException {
+        NotificationDispatcher small = new NotificationDispatcher(1, 1, "Small-Shard-");
+        CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            small.submit("a", () -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Thread.sleep(100);
+
+            assertTrue(small.submit("a", () -> { }));
+            assertFalse(small.submit("a", () -> { }));
+        } finally {
+            blocker.countDown();
+            small.shutdown(1, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.example.superheroproxy.service;
 
-import com.example.superheroproxy.config.AsyncConfig;
 import com.example.superheroproxy.config.NotificationConfig;
-import com.example.superheroproxy.config.AppConfig;
+import com.example.superheroproxy.proto.BatchOptions;
+import com.example.superheroproxy.proto.Biography;
 import com.example.superheroproxy.proto.Hero;
 import com.example.superheroproxy.proto.HeroUpdate;
+import com.example.superheroproxy.proto.HeroUpdateBatch;
+import com.example.superheroproxy.proto.PowerStatThreshold;
+import com.example.superheroproxy.proto.PowerStats;
 import com.example.superheroproxy.proto.SubscribeRequest;
+import com.example.superheroproxy.proto.SubscriptionCommand;
+import com.example.superheroproxy.proto.SubscriptionFilter;
 import com.example.superheroproxy.proto.UpdateType;
 import com.example.superheroproxy.utils.ResponseGenerator;
+import io.grpc.StatusRuntimeException;
 import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import org.junit.jupiter.api.BeforeEach;
@@ -23,9 +29,13 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @ExtendWith(MockitoExtension.class)
 class NotificationServiceTest {
@@ -58,15 +68,7 @@ class NotificationServiceTest {
         taskExecutor.setThreadNamePrefix("Test-Async-");
         taskExecutor.initialize();
 
-        // Create AppConfig with AsyncConfig
-        AsyncConfig asyncConfig = new AsyncConfig();
-        asyncConfig.setCorePoolSize(2);
-        asyncConfig.setMaxPoolSize(4);
-        asyncConfig.setQueueCapacity(50);
-        asyncConfig.setThreadNamePrefix("Test-Async-");
-        AppConfig appConfig = new AppConfig(asyncConfig);
-
-        notificationService = new NotificationService(config, appConfig);
+        notificationService = new NotificationService(config);
     }
 
     @AfterEach
@@ -331,4 +333,397 @@ class NotificationServiceTest {
         notificationService.notifyHeroUpdate("hero1", hero, UpdateType.UPDATED);
         verify(responseObserver1, timeout(1000).times(0)).onNext(any());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testDeltaSubscriberReceivesChangedFieldsOnly() {
+        // Configure mock observer
+        when(responseObserver1.isCancelled()).thenReturn(false);
+        doNothing().when(responseObserver1).onNext(any());
+        doNothing().when(responseObserver1).setOnCancelHandler(any());
+
+        // Given
+        SubscribeRequest request = SubscribeRequest.newBuilder()
+                .addHeroIds("hero1")
+                .setDeltas(true)
+                .build();
+        notificationService.subscribeToUpdates(request, responseObserver1);
+
+        Hero hero = Hero.newBuilder().setId("hero1").setName("Test Hero")
+                .setPowerstats(PowerStats.newBuilder().setSpeed("50").setStrength("60"))
+                .build();
+        Hero fasterHero = hero.toBuilder()
+                .setPowerstats(hero.getPowerstats().toBuilder().setSpeed("70"))
+                .build();
+
+        // When
+        notificationService.notifyHeroUpdate("hero1", hero, UpdateType.NEW);
+        notificationService.notifyHeroUpdate("hero1", fasterHero, UpdateType.UPDATED);
+
+        // Then - first a full hero, then a delta against it
+        ArgumentCaptor<HeroUpdate> updateCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(responseObserver1, timeout(1000).times(2)).onNext(updateCaptor.capture());
+
+        HeroUpdate first = updateCaptor.getAllValues().get(0);
+        assertTrue(first.getVersion() > 0);
+        assertEquals(hero, first.getHero());
+
+        HeroUpdate second = updateCaptor.getAllValues().get(1);
+        assertTrue(second.getVersion() > first.getVersion());
+        assertFalse(second.hasHero());
+        assertEquals(first.getVersion(), second.getDelta().getBaseVersion());
+        assertEquals(List.of("powerstats.speed"), second.getDelta().getChangedFields().getPathsList());
+        assertEquals("70", second.getDelta().getChanges().getPowerstats().getSpeed());
+        assertEquals("", second.getDelta().getChanges().getName());
+    }
+
+    @Test
+    void testStaleAndDuplicateClusterUpdatesAreDropped() {
+        // Configure mock observer
+        when(responseObserver1.isCancelled()).thenReturn(false);
+        doNothing().when(responseObserver1).onNext(any());
+        doNothing().when(responseObserver1).setOnCancelHandler(any());
+
+        // Given
+        SubscribeRequest request = SubscribeRequest.newBuilder()
+                .addHeroIds("hero1")
+                .build();
+        notificationService.subscribeToUpdates(request, responseObserver1);
+
+        HeroUpdate newer = HeroUpdate.newBuilder()
+                .setHeroId("hero1")
+                .setHero(Hero.newBuilder().setId("hero1").setName("Newer").build())
+                .setUpdateType(UpdateType.UPDATED)
+                .setVersion(200)
+                .build();
+        HeroUpdate older = newer.toBuilder()
+                .setHero(Hero.newBuilder().setId("hero1").setName("Older").build())
+                .setVersion(100)
+                .build();
+
+        // When - the newer update arrives first, then a redelivery and a late older update
+        notificationService.deliverLocally(newer);
+        notificationService.deliverLocally(newer);
+        notificationService.deliverLocally(older);
+
+        // Then - only the newer update is delivered
+        ArgumentCaptor<HeroUpdate> updateCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(responseObserver1, after(500).times(1)).onNext(updateCaptor.capture());
+        assertEquals(200, updateCaptor.getValue().getVersion());
+        assertEquals("Newer", updateCaptor.getValue().getHero().getName());
+    }
+
+    @Test
+    void testSameChangeFromTwoNodesIsDeliveredOnce() {
+        // Configure mock observer
+        when(responseObserver1.isCancelled()).thenReturn(false);
+        doNothing().when(responseObserver1).onNext(any());
+        doNothing().when(responseObserver1).setOnCancelHandler(any());
+
+        // Given
+        SubscribeRequest request = SubscribeRequest.newBuilder()
+                .addHeroIds("hero1")
+                .build();
+        notificationService.subscribeToUpdates(request, responseObserver1);
+
+        HeroUpdate fromFirstNode = HeroUpdate.newBuilder()
+                .setHeroId("hero1")
+                .setHero(Hero.newBuilder().setId("hero1").setName("Changed").build())
+                .setUpdateType(UpdateType.UPDATED)
+                .setVersion(100)
+                .build();
+        HeroUpdate fromSecondNode = fromFirstNode.toBuilder()
+                .setVersion(101)
+                .build();
+
+        // When - two nodes detected the same change and published it under their own versions
+        notificationService.deliverLocally(fromFirstNode);
+        notificationService.deliverLocally(fromSecondNode);
+
+        // Then
+        ArgumentCaptor<HeroUpdate> updateCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(responseObserver1, after(500).times(1)).onNext(updateCaptor.capture());
+        assertEquals(100, updateCaptor.getValue().getVersion());
+    }
+
+    @Test
+    void testUpdatesOverRateLimitAreHeldNotSent() {
+        // Configure mock observer
+        when(responseObserver1.isCancelled()).thenReturn(false);
+        doNothing().when(responseObserver1).onNext(any());
+        doNothing().when(responseObserver1).setOnCancelHandler(any());
+
+        // Given - at most 2 notifications per hero per second
+        notificationService.cleanup();
+        config.setRateLimitPerMinute(2);
+        notificationService = new NotificationService(config, null, new HeroVersionCounter(null, null), TimeUnit.SECONDS.toNanos(1));
+
+        SubscribeRequest request = SubscribeRequest.newBuilder()
+                .addHeroIds("hero1")
+                .build();
+        notificationService.subscribeToUpdates(request, responseObserver1);
+
+        // When
+        for (int i = 1; i <= 5; i++) {
+            Hero hero = Hero.newBuilder().setId("hero1").setName("Version " + i).build();
+            notificationService.notifyHeroUpdate("hero1", hero, UpdateType.UPDATED);
+        }
+
+        // Then - the first two go out, the rest are held as one pending update
+        ArgumentCaptor<HeroUpdate> updateCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(responseObserver1, after(300).times(2)).onNext(updateCaptor.capture());
+        assertEquals("Version 1", updateCaptor.getAllValues().get(0).getHero().getName());
+        assertEquals("Version 2", updateCaptor.getAllValues().get(1).getHero().getName());
+
+        // Then - once the window frees, exactly one update with the latest held state goes out
+        updateCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(responseObserver1, timeout(3000).times(3)).onNext(updateCaptor.capture());
+        verify(responseObserver1, after(1500).times(3)).onNext(any());
+        assertEquals("Version 5", updateCaptor.getAllValues().get(2).getHero().getName());
+    }
+
+    @Test
+    void testSubscribeAllWithFilterOnlyReceivesMatchingUpdates() {
+        // Configure mock observer
+        when(responseObserver1.isCancelled()).thenReturn(false);
+        doNothing().when(responseObserver1).onNext(any());
+        doNothing().when(responseObserver1).setOnCancelHandler(any());
+
+        // Given - Marvel villains only
+        SubscribeRequest request = SubscribeRequest.newBuilder()
+                .setSubscribeAll(true)
+                .setFilter(SubscriptionFilter.newBuilder()
+                        .addPublishers("Marvel Comics")
+                        .addAlignments("bad"))
+                .build();
+        notificationService.subscribeToUpdates(request, responseObserver1);
+
+        Hero villain = Hero.newBuilder().setId("hero1").setName("Villain")
+                .setBiography(Biography.newBuilder().setPublisher("Marvel Comics").setAlignment("bad"))
+                .build();
+        Hero hero = Hero.newBuilder().setId("hero2").setName("Hero")
+                .setBiography(Biography.newBuilder().setPublisher("Marvel Comics").setAlignment("good"))
+                .build();
+
+        // When
+        notificationService.notifyHeroUpdate("hero2", hero, UpdateType.UPDATED);
+        notificationService.notifyHeroUpdate("hero1", villain, UpdateType.UPDATED);
+
+        // Then
+        ArgumentCaptor<HeroUpdate> updateCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(responseObserver1, after(500).times(1)).onNext(updateCaptor.capture());
+        assertEquals("hero1", updateCaptor.getValue().getHeroId());
+    }
+
+    @Test
+    void testInvalidFilterIsRejected() {
+        // Given
+        SubscribeRequest request = SubscribeRequest.newBuilder()
+                .setSubscribeAll(true)
+                .setFilter(SubscriptionFilter.newBuilder()
+                        .addMinPowerstats(PowerStatThreshold.newBuilder().setStat("charisma").setMin(10)))
+                .build();
+
+        // When
+        notificationService.subscribeToUpdates(request, responseObserver1);
+
+        // Then
+        verify(responseObserver1).onError(any(StatusRuntimeException.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchedSubscriberReceivesUpdatesInBatches() {
+        // Configure mock observer
+        ServerCallStreamObserver<HeroUpdateBatch> batchObserver = mock(ServerCallStreamObserver.class);
+        when(batchObserver.isCancelled()).thenReturn(false);
+
+        // Given - batches of at most 3 updates or 200ms
+        SubscribeRequest request = SubscribeRequest.newBuilder()
+                .setSubscribeAll(true)
+                .setBatch(BatchOptions.newBuilder().setMaxUpdates(3).setMaxDelayMs(200))
+                .build();
+        notificationService.subscribeToBatchedUpdates(request, batchObserver);
+
+        // When
+        for (int i = 1; i <= 4; i++) {
+            Hero hero = Hero.newBuilder().setId("hero" + i).setName("Hero " + i).build();
+            notificationService.notifyHeroUpdate("hero" + i, hero, UpdateType.NEW);
+        }
+
+        // Then - a full batch, then the remainder once the delay has passed
+        ArgumentCaptor<HeroUpdateBatch> batchCaptor = ArgumentCaptor.forClass(HeroUpdateBatch.class);
+        verify(batchObserver, timeout(2000).times(2)).onNext(batchCaptor.capture());
+        List<HeroUpdateBatch> batches = batchCaptor.getAllValues();
+        assertEquals(3, batches.get(0).getUpdatesCount());
+        assertEquals(1, batches.get(1).getUpdatesCount());
+        assertEquals(4, batches.stream().mapToInt(HeroUpdateBatch::getUpdatesCount).sum());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedTimedBatchRemovesOnlyThatSubscriber() {
+        // Configure mock observers - one stream fails every write
+        ServerCallStreamObserver<HeroUpdateBatch> brokenObserver = mock(ServerCallStreamObserver.class);
+        ServerCallStreamObserver<HeroUpdateBatch> healthyObserver = mock(ServerCallStreamObserver.class);
+        when(brokenObserver.isCancelled()).thenReturn(false);
+        when(healthyObserver.isCancelled()).thenReturn(false);
+        doThrow(new RuntimeException("Stream broken")).when(brokenObserver).onNext(any());
+
+        // Given - batches that are only ever sent by the timer
+        SubscribeRequest request = SubscribeRequest.newBuilder()
+                .setSubscribeAll(true)
+                .setBatch(BatchOptions.newBuilder().setMaxUpdates(100).setMaxDelayMs(50))
+                .build();
+        notificationService.subscribeToBatchedUpdates(request, brokenObserver);
+        notificationService.subscribeToBatchedUpdates(request, healthyObserver);
+
+        // When - one update, a timed flush, then another update
+        notificationService.notifyHeroUpdate("hero1", Hero.newBuilder().setId("hero1").setName("Hero 1").build(), UpdateType.NEW);
+        verify(healthyObserver, timeout(2000).times(1)).onNext(any());
+        notificationService.notifyHeroUpdate("hero2", Hero.newBuilder().setId("hero2").setName("Hero 2").build(), UpdateType.NEW);
+
+        // Then - the timer went on flushing, and the broken stream was dropped after its first failure
+        verify(healthyObserver, timeout(2000).times(2)).onNext(any());
+        verify(brokenObserver, after(300).times(1)).onNext(any());
+    }
+
+    @Test
+    void testIdenticalSubscriptionsShareGroupAndSurviveMemberLeaving() {
+        // Configure mock observers
+        when(responseObserver1.isCancelled()).thenReturn(false);
+        when(responseObserver2.isCancelled()).thenReturn(false);
+
+        // Given - the same heroes in a different order
+        notificationService.subscribeToUpdates(SubscribeRequest.newBuilder()
+                .addHeroIds("hero1").addHeroIds("hero2").build(), responseObserver1);
+        notificationService.subscribeToUpdates(SubscribeRequest.newBuilder()
+                .addHeroIds("hero2").addHeroIds("hero1").build(), responseObserver2);
+
+        Hero hero = Hero.newBuilder().setId("hero1").setName("Test Hero").build();
+        notificationService.notifyHeroUpdate("hero1", hero, UpdateType.UPDATED);
+        verify(responseObserver1, timeout(1000).times(1)).onNext(any());
+        verify(responseObserver2, timeout(1000).times(1)).onNext(any());
+
+        // When - the first member cancels
+        ArgumentCaptor<Runnable> cancelHandler = ArgumentCaptor.forClass(Runnable.class);
+        verify(responseObserver1).setOnCancelHandler(cancelHandler.capture());
+        cancelHandler.getValue().run();
+        notificationService.notifyHeroUpdate("hero2", hero.toBuilder().setId("hero2").build(), UpdateType.UPDATED);
+
+        // Then - the remaining member still receives updates
+        verify(responseObserver2, timeout(1000).times(2)).onNext(any());
+        verify(responseObserver1, after(200).times(1)).onNext(any());
+    }
+
+    @Test
+    void testInitialSnapshotIsSentBeforeLiveUpdates() {
+        // Given - hero1 is cached, hero2 is not
+        HeroCacheReader heroCacheReader = mock(HeroCacheReader.class);
+        Hero cached = Hero.newBuilder().setId("hero1").setName("Cached Hero").build();
+        when(heroCacheReader.getHeroes(any())).thenReturn(Map.of("hero1", cached));
+        notificationService.cleanup();
+        notificationService = new NotificationService(config, heroCacheReader);
+
+        SubscribeRequest request = SubscribeRequest.newBuilder()
+                .addHeroIds("hero1")
+                .addHeroIds("hero2")
+                .setInitialSnapshot(true)
+                .build();
+
+        // When
+        notificationService.subscribeToUpdates(request, responseObserver1);
+        notificationService.notifyHeroUpdate("hero2", Hero.newBuilder().setId("hero2").setName("Live Hero").build(), UpdateType.NEW);
+
+        // Then - the snapshot comes first, followed by the live update
+        ArgumentCaptor<HeroUpdate> updateCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(responseObserver1, timeout(1000).times(2)).onNext(updateCaptor.capture());
+        List<HeroUpdate> updates = updateCaptor.getAllValues();
+        assertEquals(UpdateType.SNAPSHOT, updates.get(0).getUpdateType());
+        assertEquals(cached, updates.get(0).getHero());
+        assertEquals(UpdateType.NEW, updates.get(1).getUpdateType());
+        assertEquals("hero2", updates.get(1).getHeroId());
+        verify(heroCacheReader, times(1)).getHeroes(any());
+    }
+
+    @Test
+    void testResumeFromAnotherEpochGetsSnapshotInsteadOfReplay() {
+        // Given - hero1 was updated once on this node
+        HeroCacheReader heroCacheReader = mock(HeroCacheReader.class);
+        Hero hero = Hero.newBuilder().setId("hero1").setName("Hero 1").build();
+        when(heroCacheReader.getHeroes(any())).thenReturn(Map.of("hero1", hero));
+        notificationService.cleanup();
+        notificationService = new NotificationService(config, heroCacheReader);
+        notificationService.subscribeToUpdates(SubscribeRequest.newBuilder().addHeroIds("hero1").build(), responseObserver1);
+        notificationService.notifyHeroUpdate("hero1", hero, UpdateType.UPDATED);
+        ArgumentCaptor<HeroUpdate> liveCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(responseObserver1, timeout(1000).times(1)).onNext(liveCaptor.capture());
+        HeroUpdate live = liveCaptor.getValue();
+
+        // When - one client resumes with this node's epoch, another with an epoch from elsewhere
+        notificationService.subscribeToUpdates(SubscribeRequest.newBuilder()
+                .addHeroIds("hero1")
+                .setResumeFrom(live.getSequence() - 1)
+                .setResumeEpoch(live.getSequenceEpoch())
+                .build(), responseObserver2);
+        notificationService.subscribeToUpdates(SubscribeRequest.newBuilder()
+                .addHeroIds("hero1")
+                .setResumeFrom(live.getSequence() - 1)
+                .setResumeEpoch("another-node")
+                .build(), serverCallStreamObserver);
+
+        // Then - the first gets the missed update replayed, the second a snapshot
+        verify(responseObserver2, timeout(1000)).onNext(live);
+        ArgumentCaptor<HeroUpdate> snapshotCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(serverCallStreamObserver, timeout(1000).times(1)).onNext(snapshotCaptor.capture());
+        assertEquals(UpdateType.SNAPSHOT, snapshotCaptor.getValue().getUpdateType());
+        assertEquals(live.getSequenceEpoch(), snapshotCaptor.getValue().getSequenceEpoch());
+    }
+
+    @Test
+    void testManagedSubscriptionChangesHeroesOnOpenStream() {
+        // Given - a managed subscription to hero1
+        StreamObserver<SubscriptionCommand> commands = notificationService.manageSubscription(responseObserver1);
+        commands.onNext(SubscriptionCommand.newBuilder().addAddHeroIds("hero1").build());
+        Hero hero1 = Hero.newBuilder().setId("hero1").setName("Hero 1").build();
+        Hero hero2 = Hero.newBuilder().setId("hero2").setName("Hero 2").build();
+        notificationService.notifyHeroUpdate("hero1", hero1, UpdateType.UPDATED);
+        verify(responseObserver1, timeout(1000).times(1)).onNext(any());
+
+        // When - hero1 is swapped for hero2 on the same stream
+        commands.onNext(SubscriptionCommand.newBuilder().addRemoveHeroIds("hero1").addAddHeroIds("hero2").build());
+        notificationService.notifyHeroUpdate("hero1", hero1.toBuilder().setName("Hero 1 again").build(), UpdateType.UPDATED);
+        notificationService.notifyHeroUpdate("hero2", hero2, UpdateType.UPDATED);
+
+        // Then - only hero2 arrives after the change
+        ArgumentCaptor<HeroUpdate> updateCaptor = ArgumentCaptor.forClass(HeroUpdate.class);
+        verify(responseObserver1, timeout(1000).times(2)).onNext(updateCaptor.capture());
+        verify(responseObserver1, after(200).times(2)).onNext(any());
+        assertEquals("hero2", updateCaptor.getAllValues().get(1).getHeroId());
+        verify(responseObserver1, never()).onError(any());
+    }
+
+    @Test
+    void testLocalListenerReceivesDeliveredUpdates() {
+        // Given
+        List<HeroUpdate> received = new CopyOnWriteArrayList<>();
+        Consumer<HeroUpdate> listener = received::add;
+        notificationService.addLocalListener(listener);
+        Hero hero = Hero.newBuilder().setId("hero1").setName("Hero 1").build();
+
+        // When
+        notificationService.notifyHeroUpdate("hero1", hero, UpdateType.UPDATED);
+
+        // Then
+        verify(responseObserver1, after(500).never()).onNext(any());
+        assertEquals(1, received.size());
+        assertEquals(hero, received.get(0).getHero());
+
+        // When - the listener is removed
+        notificationService.removeLocalListener(listener);
+        notificationService.notifyHeroUpdate("hero1", hero.toBuilder().setName("Hero 1 again").build(), UpdateType.UPDATED);
+
+        // Then
+        verify(responseObserver1, after(500).never()).onNext(any());
+        assertEquals(1, received.size());
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.superheroproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class SlidingWindowRateLimiterTest {
+
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    void testPermitsUpToLimitPerWindow() {
+        // Given
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(3, 10, TimeUnit.SECONDS);
+        long now = System.nanoTime();
+
+        // When / Then
+        assertTrue(limiter.tryAcquire(now));
+        assertTrue(limiter.tryAcquire(now));
+        assertTrue(limiter.tryAcquire(now));
+        assertFalse(limiter.tryAcquire(now));
+        assertTrue(limiter.nanosUntilAvailable(now) > 0);
+    }
+
+    @Test
+    void testPreviousWindowSlidesOutGradually() {
+        // Given - the limit is used up in one window
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(4, 10, TimeUnit.SECONDS);
+        long now = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire(now));
+        }
+
+        // When - a permit frees up as soon as the previous window starts sliding out
+        long reopensIn = limiter.nanosUntilAvailable(now);
+        assertTrue(reopensIn <= WINDOW + 1);
+        assertFalse(limiter.tryAcquire(now + reopensIn - TimeUnit.MILLISECONDS.toNanos(100)));
+        assertTrue(limiter.tryAcquire(now + reopensIn));
+
+        // Then - the next one only once a quarter of the previous window has slid out
+        long nextIn = limiter.nanosUntilAvailable(now + reopensIn);
+        assertTrue(Math.abs(nextIn - WINDOW / 4) < TimeUnit.MILLISECONDS.toNanos(10));
+        assertFalse(limiter.tryAcquire(now + reopensIn + nextIn - TimeUnit.MILLISECONDS.toNanos(100)));
+        assertTrue(limiter.tryAcquire(now + reopensIn + nextIn));
+    }
+
+    @Test
+    void testIdleAfterTwoQuietWindows() {
+        // Given
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(1, 1, TimeUnit.MILLISECONDS);
+        assertTrue(limiter.tryAcquire());
+
+        // When
+        long later = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+
+        // Then
+        assertEquals(0, limiter.nanosUntilAvailable(later));
+        assertTrue(limiter.tryAcquire(later));
+    }
+}
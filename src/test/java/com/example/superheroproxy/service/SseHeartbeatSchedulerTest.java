@@ -0,0 +1,69 @@
+package com.example.superheroproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.superheroproxy.config.NotificationConfig;
+
+class SseHeartbeatSchedulerTest {
+
+    private SseHeartbeatScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        NotificationConfig config = new NotificationConfig();
+        config.setSseHeartbeatSeconds(1);
+        scheduler = new SseHeartbeatScheduler(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testSubscriptionsArePingedUntilCancelled() throws Exception {
+        // Given
+        Runnable ping1 = mock(Runnable.class);
+        Runnable ping2 = mock(Runnable.class);
+
+        // When
+        SseHeartbeatScheduler.Heartbeat heartbeat1 = scheduler.start("hero1", ping1);
+        SseHeartbeatScheduler.Heartbeat heartbeat2 = scheduler.start("all", ping2);
+
+        // Then - both are pinged repeatedly by the shared scheduler
+        verify(ping1, timeout(5000).atLeast(2)).run();
+        verify(ping2, timeout(5000).atLeast(2)).run();
+
+        // When - both are cancelled
+        heartbeat1.cancel();
+        heartbeat2.cancel();
+        Thread.sleep(1500);
+
+        // Then - nothing is left on the timer
+        assertEquals(0, scheduler.scheduledHeartbeats());
+    }
+
+    @Test
+    void testUnexpectedFailureStopsPings() throws Exception {
+        // Given
+        Runnable ping = mock(Runnable.class);
+        doThrow(new IllegalStateException("closed")).when(ping).run();
+
+        // When
+        scheduler.start("hero1", ping);
+
+        // Then - no further pings after the failure
+        verify(ping, timeout(3000)).run();
+        verify(ping, after(1500).times(1)).run();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.superheroproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.superheroproxy.proto.Biography;
+import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.proto.HeroUpdate;
+import com.example.superheroproxy.proto.PowerStatThreshold;
+import com.example.superheroproxy.proto.PowerStats;
+import com.example.superheroproxy.proto.SubscriptionFilter;
+import com.example.superheroproxy.proto.UpdateType;
+
+class SubscriptionIndexTest {
+
+    private HeroUpdate update(String publisher, String alignment, String strength, UpdateType type) {
+        Hero hero = Hero.newBuilder()
+                .setId("1")
+                .setName("Test Hero")
+                .setBiography(Biography.newBuilder().setPublisher(publisher).setAlignment(alignment))
+                .setPowerstats(PowerStats.newBuilder().setStrength(strength))
+                .build();
+        return HeroUpdate.newBuilder().setHeroId("1").setHero(hero).setUpdateType(type).build();
+    }
+
+    private List<String> matches(SubscriptionIndex<String> index, HeroUpdate update) {
+        List<String> matched = new ArrayList<>();
+        index.forEachMatch(update, matched::add);
+        return matched;
+    }
+
+    @Test
+    void testUpdateOnlyReachesMatchingSubscribers() {
+        // Given
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        index.add("everything", CompiledSubscriptionFilter.MATCH_ALL);
+        index.add("marvel", CompiledSubscriptionFilter.compile(SubscriptionFilter.newBuilder()
+                .addPublishers("Marvel Comics").build()));
+        index.add("marvel-villains", CompiledSubscriptionFilter.compile(SubscriptionFilter.newBuilder()
+                .addPublishers("marvel comics").addAlignments("Bad").build()));
+        index.add("dc-or-marvel-villains", CompiledSubscriptionFilter.compile(SubscriptionFilter.newBuilder()
+                .addPublishers("DC Comics").addPublishers("Marvel Comics").addAlignments("bad").build()));
+
+        // When / Then
+        assertEquals(List.of("marvel-villains", "dc-or-marvel-villains", "marvel", "everything"),
+                matches(index, update("Marvel Comics", "bad", "50", UpdateType.UPDATED)));
+        assertEquals(List.of("marvel", "everything"),
+                matches(index, update("Marvel Comics", "good", "50", UpdateType.UPDATED)));
+        assertEquals(List.of("everything"),
+                matches(index, update("Dark Horse Comics", "bad", "50", UpdateType.UPDATED)));
+    }
+
+    @Test
+    void testResidualPredicatesAreChecked() {
+        // Given
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        index.add("strong-new", CompiledSubscriptionFilter.compile(SubscriptionFilter.newBuilder()
+                .addUpdateTypes(UpdateType.NEW)
+                .addMinPowerstats(PowerStatThreshold.newBuilder().setStat("strength").setMin(80))
+                .build()));
+
+        // When / Then
+        assertEquals(List.of("strong-new"), matches(index, update("Marvel Comics", "good", "85", UpdateType.NEW)));
+        assertTrue(matches(index, update("Marvel Comics", "good", "85", UpdateType.UPDATED)).isEmpty());
+        assertTrue(matches(index, update("Marvel Comics", "good", "79", UpdateType.NEW)).isEmpty());
+        assertTrue(matches(index, update("Marvel Comics", "good", "null", UpdateType.NEW)).isEmpty());
+    }
+
+    @Test
+    void testRemoveUnregistersAllKeys() {
+        // Given - registered under two keys
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        CompiledSubscriptionFilter filter = CompiledSubscriptionFilter.compile(SubscriptionFilter.newBuilder()
+                .addPublishers("DC Comics").addPublishers("Marvel Comics").build());
+        index.add("both", filter);
+        index.add("other", CompiledSubscriptionFilter.MATCH_ALL);
+
+        // When
+        index.remove("both", filter);
+
+        // Then - the buckets left empty are dropped
+        assertEquals(1, index.size());
+        assertEquals(1, index.bucketCount());
+        assertEquals(List.of("other"), matches(index, update("DC Comics", "good", "1", UpdateType.NEW)));
+        assertEquals(List.of("other"), matches(index, update("Marvel Comics", "good", "1", UpdateType.NEW)));
+    }
+
+    @Test
+    void testEquivalentFiltersHaveSameCanonicalKey() {
+        CompiledSubscriptionFilter first = CompiledSubscriptionFilter.compile(SubscriptionFilter.newBuilder()
+                .addPublishers("Marvel Comics").addPublishers("DC Comics")
+                .addMinPowerstats(PowerStatThreshold.newBuilder().setStat("speed").setMin(50))
+                .build());
+        CompiledSubscriptionFilter second = CompiledSubscriptionFilter.compile(SubscriptionFilter.newBuilder()
+                .addPublishers(" dc comics").addPublishers("MARVEL COMICS")
+                .addUpdateTypes(UpdateType.NEW).addUpdateTypes(UpdateType.UPDATED).addUpdateTypes(UpdateType.DELETED)
+                .addMinPowerstats(PowerStatThreshold.newBuilder().setStat("Speed").setMin(50))
+                .build());
+
+        assertEquals(first.canonicalKey(), second.canonicalKey());
+        assertFalse(first.canonicalKey().equals(CompiledSubscriptionFilter.MATCH_ALL.canonicalKey()));
+    }
+
+    @Test
+    void testUnknownPowerstatIsRejected() {
+        SubscriptionFilter filter = SubscriptionFilter.newBuilder()
+                .addMinPowerstats(PowerStatThreshold.newBuilder().setStat("charisma").setMin(10))
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> CompiledSubscriptionFilter.compile(filter));
+    }
+}
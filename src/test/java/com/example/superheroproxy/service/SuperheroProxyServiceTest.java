@@ -351,4 +351,4 @@ public class SuperheroProxyServiceTest {
             fail("Test interrupted");
         }
     }
-} 
\ No newline at end of file
+}
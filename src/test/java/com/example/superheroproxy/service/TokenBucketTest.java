@@ -0,0 +1,54 @@
+package com.example.superheroproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void testFullBucketAllowsBurstThenRefillsAtRate() {
+        // Given - 10 tokens per second, at most 3 at once
+        TokenBucket bucket = new TokenBucket(10, 3);
+        long now = System.nanoTime();
+        assertEquals(3, bucket.available(now));
+
+        // When / Then - the burst is used up
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now));
+        assertEquals(0, bucket.available(now));
+        assertEquals(INTERVAL, bucket.nanosUntilAvailable(now));
+
+        // When / Then - one token comes back per interval
+        assertFalse(bucket.tryAcquire(now + INTERVAL - 1));
+        assertTrue(bucket.tryAcquire(now + INTERVAL));
+        assertFalse(bucket.tryAcquire(now + INTERVAL));
+    }
+
+    @Test
+    void testIdleBucketNeverHoldsMoreThanCapacity() {
+        // Given
+        TokenBucket bucket = new TokenBucket(10, 2);
+        long now = System.nanoTime();
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+
+        // When - idle for much longer than it takes to refill
+        long later = now + TimeUnit.MINUTES.toNanos(1);
+
+        // Then
+        assertEquals(2, bucket.available(later));
+        assertEquals(0, bucket.nanosUntilAvailable(later));
+        assertTrue(bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later));
+        assertFalse(bucket.tryAcquire(later));
+    }
+}
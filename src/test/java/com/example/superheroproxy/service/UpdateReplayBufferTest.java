@@ -0,0 +1,59 @@
+package com.example.superheroproxy.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class UpdateReplayBufferTest {
+
+    private static byte[] payload(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testReadAfterReturnsUpdatesInSequenceOrder() {
+        UpdateReplayBuffer buffer = new UpdateReplayBuffer(8, 64);
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(buffer.append(i, payload("update-" + i)));
+        }
+
+        List<byte[]> missed = buffer.readAfter(2);
+
+        assertEquals(3, missed.size());
+        assertArrayEquals(payload("update-3"), missed.get(0));
+        assertArrayEquals(payload("update-5"), missed.get(2));
+    }
+
+    @Test
+    void testOverwrittenUpdatesAreNotReplayed() {
+        UpdateReplayBuffer buffer = new UpdateReplayBuffer(4, 64);
+        for (int i = 1; i <= 10; i++) {
+            buffer.append(i, payload("update-" + i));
+        }
+
+        List<byte[]> missed = buffer.readAfter(0);
+
+        assertEquals(7, buffer.getOldestSequence());
+        assertEquals(4, missed.size());
+        assertArrayEquals(payload("update-7"), missed.get(0));
+    }
+
+    @Test
+    void testOversizedUpdateLeavesGap() {
+        UpdateReplayBuffer buffer = new UpdateReplayBuffer(4, 20);
+        buffer.append(1, payload("small"));
+        assertFalse(buffer.append(2, payload("much too large for a slot")));
+        buffer.append(3, payload("tiny"));
+
+        List<byte[]> missed = buffer.readAfter(0);
+
+        assertEquals(2, missed.size());
+        assertArrayEquals(payload("tiny"), missed.get(1));
+    }
+}
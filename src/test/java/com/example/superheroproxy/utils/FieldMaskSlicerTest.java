@@ -0,0 +1,103 @@
+package com.example.superheroproxy.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.superheroproxy.proto.Biography;
+import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.proto.Image;
+import com.example.superheroproxy.proto.PowerStats;
+import com.example.superheroproxy.proto.Work;
+import com.google.protobuf.DoubleValue;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.FloatValue;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.FieldMaskUtil;
+
+class FieldMaskSlicerTest {
+
+    private final Hero hero = Hero.newBuilder()
+            .setId("70")
+            .setName("Batman")
+            .setPowerstats(PowerStats.newBuilder().setIntelligence("100").setStrength("26"))
+            .setBiography(Biography.newBuilder()
+                    .setFullName("Bruce Wayne")
+                    .addAliases("Dark Knight")
+                    .setPublisher("DC Comics"))
+            .setWork(Work.newBuilder().setOccupation("Businessman"))
+            .setImage(Image.newBuilder().setUrl("https://example.com/70.jpg"))
+            .build();
+
+    @Test
+    void testSlicedBytesKeepOnlyMaskedFields() throws Exception {
+        // Given
+        FieldMaskSlicer slicer = FieldMaskSlicer.of(Hero.getDescriptor(), FieldMaskUtil.fromString("id,name,image"));
+
+        // When
+        Hero sliced = Hero.parseFrom(slicer.slice(hero.toByteArray()));
+
+        // Then
+        assertEquals(Hero.newBuilder().setId("70").setName("Batman").setImage(hero.getImage()).build(), sliced);
+        assertFalse(sliced.hasBiography());
+    }
+
+    @Test
+    void testVarintAndFixedFieldsAreCopied() throws Exception {
+        // Given
+        Timestamp timestamp = Timestamp.newBuilder().setSeconds(-1_700_000_000L).setNanos(42).build();
+        DoubleValue doubleValue = DoubleValue.of(2.5);
+        FloatValue floatValue = FloatValue.of(-0.75f);
+
+        // When
+        Timestamp slicedTimestamp = Timestamp.parseFrom(FieldMaskSlicer.of(Timestamp.getDescriptor(),
+                FieldMaskUtil.fromString("seconds,nanos")).slice(timestamp.toByteArray()));
+        DoubleValue slicedDouble = DoubleValue.parseFrom(FieldMaskSlicer.of(DoubleValue.getDescriptor(),
+                FieldMaskUtil.fromString("value")).slice(doubleValue.toByteArray()));
+        FloatValue slicedFloat = FloatValue.parseFrom(FieldMaskSlicer.of(FloatValue.getDescriptor(),
+                FieldMaskUtil.fromString("value")).slice(floatValue.toByteArray()));
+
+        // Then
+        assertEquals(timestamp, slicedTimestamp);
+        assertEquals(doubleValue, slicedDouble);
+        assertEquals(floatValue, slicedFloat);
+    }
+
+    @Test
+    void testNestedPathsSliceNestedMessages() throws Exception {
+        // Given
+        FieldMaskSlicer slicer = FieldMaskSlicer.of(Hero.getDescriptor(),
+                FieldMaskUtil.fromString("id,biography.publisher,biography.aliases"));
+
+        // When
+        Hero sliced = Hero.parseFrom(slicer.slice(hero.toByteArray()));
+
+        // Then
+        assertEquals("70", sliced.getId());
+        assertEquals("DC Comics", sliced.getBiography().getPublisher());
+        assertEquals(1, sliced.getBiography().getAliasesCount());
+        assertTrue(sliced.getBiography().getFullName().isEmpty());
+        assertFalse(sliced.hasPowerstats());
+    }
+
+    @Test
+    void testObjectsArePrunedLikeBytes() throws Exception {
+        // Given
+        FieldMaskSlicer slicer = FieldMaskSlicer.of(Hero.getDescriptor(),
+                FieldMaskUtil.fromString("name,powerstats.strength,work"));
+
+        // When / Then
+        assertEquals(Hero.parseFrom(slicer.slice(hero.toByteArray())), slicer.apply(hero));
+    }
+
+    @Test
+    void testUnknownFieldIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> FieldMaskSlicer.of(Hero.getDescriptor(), FieldMask.newBuilder().addPaths("secret_identity").build()));
+        assertThrows(IllegalArgumentException.class,
+                () -> FieldMaskSlicer.of(Hero.getDescriptor(), FieldMask.newBuilder().addPaths("name.first").build()));
+    }
+}
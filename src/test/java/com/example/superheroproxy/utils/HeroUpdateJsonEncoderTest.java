@@ -0,0 +1,67 @@
+package com.example.superheroproxy.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.superheroproxy.proto.Biography;
+import com.example.superheroproxy.proto.Hero;
+import com.example.superheroproxy.proto.HeroUpdate;
+import com.example.superheroproxy.proto.PowerStats;
+import com.example.superheroproxy.proto.UpdateType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class HeroUpdateJsonEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testEncodingMatchesConverterShape() throws Exception {
+        // Given
+        Hero hero = Hero.newBuilder()
+                .setId("70")
+                .setName("Batman")
+                .setPowerstats(PowerStats.newBuilder().setIntelligence("100").setStrength("26").setSpeed("27")
+                        .setDurability("50").setPower("47").setCombat("100"))
+                .setBiography(Biography.newBuilder().setFullName("Bruce \"The Bat\" Wayne").setAlterEgos("No alter egos found.")
+                        .addAliases("Dark Knight").addAliases("Caped Crusader").setPlaceOfBirth("Gotham City")
+                        .setFirstAppearance("Detective Comics #27").setPublisher("DC Comics").setAlignment("good"))
+                .build();
+        HeroUpdate update = HeroUpdate.newBuilder()
+                .setHeroId("70")
+                .setHero(hero)
+                .setUpdateType(UpdateType.UPDATED)
+                .build();
+
+        // When
+        JsonNode encoded = objectMapper.readTree(HeroUpdateJsonEncoder.encode(update));
+
+        // Then
+        JsonNode expected = objectMapper.valueToTree(Converter.convertHeroUpdateToMap(update));
+        assertEquals(expected, encoded);
+    }
+
+    @Test
+    void testBatchEncodingMatchesConverterShape() throws Exception {
+        // Given
+        Hero batman = Hero.newBuilder()
+                .setId("70")
+                .setName("Batman")
+                .setBiography(Biography.newBuilder().setFullName("Bruce Wayne").addAliases("Dark Knight"))
+                .build();
+        Hero superman = Hero.newBuilder().setId("644").setName("Superman").build();
+
+        // When
+        JsonNode encoded = objectMapper.readTree(HeroUpdateJsonEncoder.encodeBatch(List.of(batman, superman), List.of("999")));
+
+        // Then
+        JsonNode expected = objectMapper.valueToTree(Map.of(
+                "heroes", List.of(Converter.convertHeroToMap(batman), Converter.convertHeroToMap(superman)),
+                "missingIds", List.of("999")));
+        assertEquals(expected, encoded);
+    }
+}